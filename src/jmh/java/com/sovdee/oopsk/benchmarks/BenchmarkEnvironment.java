@@ -0,0 +1,111 @@
+package com.sovdee.oopsk.benchmarks;
+
+import ch.njol.skript.classes.ClassInfo;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.registrations.Classes;
+import com.sovdee.oopsk.core.Field;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructTemplate;
+import com.sovdee.oopsk.core.generation.ReflectionUtils;
+import com.sovdee.oopsk.core.generation.TemporaryClassManager;
+
+import java.util.List;
+
+/**
+ * A stand-in for a server with Skript and oopsk enabled.
+ * Registers just the class infos the benchmarks use and closes Skript's registration, which is all the core struct
+ * classes need. Templates are built directly from fields rather than parsed from scripts, and default values are
+ * assigned as already-parsed expressions.
+ */
+public final class BenchmarkEnvironment {
+
+    private static final TemporaryClassManager classManager = new TemporaryClassManager();
+    private static boolean initialized;
+
+    private BenchmarkEnvironment() {}
+
+    /**
+     * Sets up Skript's class infos. Safe to call multiple times.
+     */
+    public static synchronized void init() {
+        if (initialized)
+            return;
+        try {
+            var tempClassInfos = ReflectionUtils.getTempClassInfos();
+            var exactClassInfos = ReflectionUtils.getExactClassInfos();
+            var classInfosByCodeName = ReflectionUtils.getClassInfosByCodeName();
+            for (ClassInfo<?> classInfo : List.of(
+                    new ClassInfo<>(Object.class, "object"),
+                    new ClassInfo<>(Number.class, "number"),
+                    new ClassInfo<>(Long.class, "long"),
+                    new ClassInfo<>(Boolean.class, "boolean"),
+                    new ClassInfo<>(String.class, "string"),
+                    new ClassInfo<>(Struct.class, "struct"))) {
+                tempClassInfos.add(classInfo);
+                exactClassInfos.put(classInfo.getC(), classInfo);
+                classInfosByCodeName.put(classInfo.getCodeName(), classInfo);
+            }
+            ReflectionUtils.disableRegistrations();
+            ReflectionUtils.sortClassInfos();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to set up the benchmark environment", e);
+        }
+        initialized = true;
+    }
+
+    /**
+     * @param type The class to get the class info of.
+     * @return The class info registered for exactly that class.
+     */
+    public static <T> ClassInfo<T> classInfo(Class<T> type) {
+        init();
+        ClassInfo<T> classInfo = Classes.getExactClassInfo(type);
+        if (classInfo == null)
+            throw new IllegalArgumentException("No class info is registered for " + type.getName() + " in the benchmark environment.");
+        return classInfo;
+    }
+
+    /**
+     * Builds a template with its own generated struct class, like a template parsed from a script.
+     *
+     * @param name   The name of the template.
+     * @param fields The fields of the template.
+     * @return The template.
+     */
+    public static StructTemplate template(String name, List<Field<?>> fields) {
+        return template(name, fields, true);
+    }
+
+    /**
+     * Builds a template with its own generated struct class, like a template parsed from a script.
+     *
+     * @param name    The name of the template.
+     * @param fields  The fields of the template.
+     * @param tracked Whether structs of the template are registered when created.
+     * @return The template.
+     */
+    public static StructTemplate template(String name, List<Field<?>> fields, boolean tracked) {
+        init();
+        //noinspection unchecked
+        Class<? extends Struct> customClass = (Class<? extends Struct>) classManager.createTemporarySubclass("Struct_benchmark_" + name);
+        return new StructTemplate(name, fields, customClass, tracked);
+    }
+
+    /**
+     * Gives a field a default value without parsing one, since the benchmarks have no script parser.
+     * Literal default values are evaluated once up front, the same as parsed ones.
+     *
+     * @param field      The field to set the default value of.
+     * @param expression The parsed default value.
+     */
+    public static <T> void setDefaultExpression(Field<T> field, Expression<? extends T> expression) {
+        try {
+            var setDefaultExpression = Field.class.getDeclaredMethod("setDefaultExpression", Expression.class);
+            setDefaultExpression.setAccessible(true);
+            setDefaultExpression.invoke(field, expression);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to set the default value of " + field, e);
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.sovdee.oopsk.benchmarks;
+
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.util.SimpleLiteral;
+import com.sovdee.oopsk.core.ConstructionPlan;
+import com.sovdee.oopsk.core.Field;
+import com.sovdee.oopsk.core.StructManager;
+import com.sovdee.oopsk.core.StructTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating 1M structs of a 10-field template with every field given an initial value, as a struct instance section does.
+ * {@link #createFromMap(Blackhole)} looks each field's value up by name for every struct, while
+ * {@link #createFromPlan(Blackhole)} follows a {@link ConstructionPlan} compiled once up front.
+ * Structs aren't tracked, so only construction is measured. Scores are per struct.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConstructionBenchmark {
+
+    private static final int FIELDS = 10;
+    private static final int STRUCTS = 1_000_000;
+
+    private StructManager structManager;
+    private StructTemplate template;
+    private Map<String, Expression<?>> initialValues;
+    private ConstructionPlan plan;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Field<?>> fields = new ArrayList<>();
+        initialValues = new HashMap<>();
+        // half number fields, stored unboxed, and half text fields
+        for (int i = 0; i < FIELDS; i++) {
+            if (i % 2 == 0) {
+                fields.add(new Field<>("number" + i, BenchmarkEnvironment.classInfo(Long.class), true, null));
+                initialValues.put("number" + i, new SimpleLiteral<>((long) i, false));
+            } else {
+                fields.add(new Field<>("text" + i, BenchmarkEnvironment.classInfo(String.class), true, null));
+                initialValues.put("text" + i, new SimpleLiteral<>("value " + i, false));
+            }
+        }
+        template = BenchmarkEnvironment.template("construction", fields, false);
+        plan = new ConstructionPlan(template, initialValues);
+        structManager = new StructManager();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STRUCTS)
+    public void createFromMap(Blackhole blackhole) {
+        for (int i = 0; i < STRUCTS; i++)
+            blackhole.consume(structManager.createStruct(template, null, initialValues));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STRUCTS)
+    public void createFromPlan(Blackhole blackhole) {
+        for (int i = 0; i < STRUCTS; i++)
+            blackhole.consume(structManager.createStruct(plan, null));
+    }
+
+}
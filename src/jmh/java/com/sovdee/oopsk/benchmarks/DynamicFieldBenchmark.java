@@ -0,0 +1,54 @@
+package com.sovdee.oopsk.benchmarks;
+
+import ch.njol.skript.lang.util.SimpleLiteral;
+import com.sovdee.oopsk.core.Field;
+import com.sovdee.oopsk.core.Field.Modifier;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading dynamic fields. Run with the gc profiler (enabled by default) and compare gc.alloc.rate.norm:
+ * reading a dynamic field with a literal expression should allocate nothing beyond what the expression returns,
+ * and reading a cached dynamic field should allocate nothing at all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DynamicFieldBenchmark {
+
+    private Field<Long> dynamic;
+    private Field<Long> cached;
+    private Struct struct;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dynamic = new Field<>("dynamic", BenchmarkEnvironment.classInfo(Long.class), true, "1", Modifier.DYNAMIC, Modifier.CONSTANT);
+        cached = new Field<>("cached", BenchmarkEnvironment.classInfo(Long.class), true, "1", Modifier.DYNAMIC, Modifier.CONSTANT, Modifier.CACHED);
+        BenchmarkEnvironment.setDefaultExpression(dynamic, new SimpleLiteral<>(1L, false));
+        BenchmarkEnvironment.setDefaultExpression(cached, new SimpleLiteral<>(1L, false));
+        StructTemplate template = BenchmarkEnvironment.template("dynamic", List.of(dynamic, cached));
+        struct = Struct.newInstance(template, null);
+    }
+
+    @Benchmark
+    public Long[] readDynamic() {
+        return struct.getFieldValue(dynamic);
+    }
+
+    @Benchmark
+    public Long[] readCachedDynamic() {
+        return struct.getFieldValue(cached);
+    }
+
+}
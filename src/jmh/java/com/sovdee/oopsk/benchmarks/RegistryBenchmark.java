@@ -0,0 +1,100 @@
+package com.sovdee.oopsk.benchmarks;
+
+import com.sovdee.oopsk.core.Field;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructManager;
+import com.sovdee.oopsk.core.StructRegistry;
+import com.sovdee.oopsk.core.StructTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Struct tracking. Membership operations should take constant time regardless of how many structs are registered or
+ * how often they are mutated, and registering structs from many threads at once must not lose any.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RegistryBenchmark {
+
+    @Param({"1000", "100000"})
+    public int registered;
+
+    private StructManager structManager;
+    private StructTemplate template;
+    private Field<Long> counter;
+    private StructRegistry registry;
+    private Struct[] structs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        counter = new Field<>("counter", BenchmarkEnvironment.classInfo(Long.class), true, null);
+        template = BenchmarkEnvironment.template("counter", List.of(counter));
+        structManager = new StructManager();
+        registry = new StructRegistry();
+        structs = new Struct[registered];
+        for (int i = 0; i < registered; i++) {
+            structs[i] = structManager.createStruct(template, null);
+            registry.add(structs[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+        long value;
+    }
+
+    /**
+     * Mutates a registered struct, then removes and re-adds it. Before identity-based tracking, the mutation changed the
+     * struct's hash and the removal silently failed.
+     */
+    @Benchmark
+    public boolean mutateAndRemove(Cursor cursor) {
+        Struct struct = structs[cursor.index++ % structs.length];
+        struct.setSingleFieldValue(counter, cursor.value++);
+        boolean removed = registry.remove(struct);
+        registry.add(struct);
+        return removed;
+    }
+
+    /**
+     * Creates and registers structs from several threads at once.
+     */
+    @Benchmark
+    @Threads(8)
+    public Struct concurrentCreation() {
+        return structManager.createStruct(template, null);
+    }
+
+    /**
+     * Creates structs on some threads while others delete them.
+     */
+    @Benchmark
+    @Group("createAndDelete")
+    @GroupThreads(4)
+    public Struct create() {
+        return structManager.createStruct(template, null);
+    }
+
+    @Benchmark
+    @Group("createAndDelete")
+    @GroupThreads(4)
+    public void delete(Cursor cursor) {
+        structManager.deleteStruct(structs[cursor.index++ % structs.length]);
+    }
+
+}
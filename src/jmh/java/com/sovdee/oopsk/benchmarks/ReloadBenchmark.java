@@ -0,0 +1,70 @@
+package com.sovdee.oopsk.benchmarks;
+
+import com.sovdee.oopsk.core.Field;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructManager;
+import com.sovdee.oopsk.core.StructTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloading a template with many existing structs. Reparenting is what blocks the reload itself;
+ * migrating is the work done as the structs are next accessed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ReloadBenchmark {
+
+    @Param({"10000", "200000"})
+    public int structCount;
+
+    private StructManager structManager;
+    private StructTemplate newTemplate;
+    private Struct[] structs;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        StructTemplate oldTemplate = BenchmarkEnvironment.template("reloaded", List.of(
+                new Field<>("x", BenchmarkEnvironment.classInfo(Long.class), true, null),
+                new Field<>("y", BenchmarkEnvironment.classInfo(Long.class), true, null)));
+        structManager = new StructManager();
+        structs = new Struct[structCount];
+        for (int i = 0; i < structCount; i++)
+            structs[i] = structManager.createStruct(oldTemplate, null);
+        structManager.orphanStructs(oldTemplate);
+
+        // the reloaded template keeps x, retypes y, and adds z
+        newTemplate = BenchmarkEnvironment.template("reloaded", List.of(
+                new Field<>("x", BenchmarkEnvironment.classInfo(Long.class), true, null),
+                new Field<>("y", BenchmarkEnvironment.classInfo(String.class), true, null),
+                new Field<>("z", BenchmarkEnvironment.classInfo(Long.class), true, null)));
+    }
+
+    @Benchmark
+    public void reparentStructs() {
+        structManager.reparentStructs(newTemplate);
+    }
+
+    @Benchmark
+    public void reparentAndMigrateStructs() {
+        structManager.reparentStructs(newTemplate);
+        for (Struct struct : structs)
+            struct.updateFromTemplate(newTemplate);
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.sovdee.oopsk.benchmarks;
+
+import com.sovdee.oopsk.core.Field;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructManager;
+import com.sovdee.oopsk.core.StructTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap cost of a wide template whose fields are mostly unset: 20 fields, of which only 2 have values.
+ * Everything allocated while creating a struct is retained by it, so the gc profiler's {@code gc.alloc.rate.norm}
+ * for {@link #createSparse()} is the heap each struct costs. {@link #freshEmptyArrays()} allocates the empty arrays
+ * that unset fields used to cost, one per field, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SparseStructBenchmark {
+
+    private static final int FIELDS = 20;
+
+    private StructManager structManager;
+    private StructTemplate template;
+    private Field<Long> x;
+    private Field<String> name;
+    private Field<?>[] fields;
+    private Struct struct;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        x = new Field<>("x", BenchmarkEnvironment.classInfo(Long.class), true, null);
+        name = new Field<>("name", BenchmarkEnvironment.classInfo(String.class), true, null);
+        List<Field<?>> fieldList = new ArrayList<>(List.of(x, name));
+        // a mix of the unset field types a real template might have
+        for (int i = fieldList.size(); i < FIELDS; i++) {
+            fieldList.add(switch (i % 3) {
+                case 0 -> new Field<>("text" + i, BenchmarkEnvironment.classInfo(String.class), true, null);
+                case 1 -> new Field<>("texts" + i, BenchmarkEnvironment.classInfo(String.class), false, null);
+                default -> new Field<>("object" + i, BenchmarkEnvironment.classInfo(Object.class), true, null);
+            });
+        }
+        fields = fieldList.toArray(new Field<?>[0]);
+        template = BenchmarkEnvironment.template("sparse", fieldList);
+        structManager = new StructManager();
+    }
+
+    @Setup(Level.Iteration)
+    public void setupStruct() {
+        struct = createSparse();
+    }
+
+    @Benchmark
+    public Struct createSparse() {
+        Struct struct = structManager.createStruct(template, null);
+        struct.setSingleFieldValue(x, 42L);
+        struct.setSingleFieldValue(name, "sparse");
+        return struct;
+    }
+
+    @Benchmark
+    public Struct copySparse() {
+        return Struct.newInstance(struct);
+    }
+
+    @Benchmark
+    public Struct snapshotSparse() {
+        return Struct.newSnapshot(struct);
+    }
+
+    @Benchmark
+    public void clearField() {
+        struct.setFieldValue(name, null);
+    }
+
+    /**
+     * The empty arrays a struct of this template allocated for its unset fields before they were shared.
+     */
+    @Benchmark
+    public Object[][] freshEmptyArrays() {
+        Object[][] values = new Object[FIELDS][];
+        for (int slot = 0; slot < FIELDS; slot++)
+            values[slot] = (Object[]) Array.newInstance(fields[slot].type().getC(), 0);
+        return values;
+    }
+
+}
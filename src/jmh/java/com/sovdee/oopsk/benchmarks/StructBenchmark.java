@@ -0,0 +1,109 @@
+package com.sovdee.oopsk.benchmarks;
+
+import ch.njol.skript.lang.util.SimpleLiteral;
+import com.sovdee.oopsk.core.Field;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructManager;
+import com.sovdee.oopsk.core.StructTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating structs, with and without literal default values, reading and writing their fields, and copying them,
+ * both eagerly and copy-on-write.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StructBenchmark {
+
+    private StructManager structManager;
+    private StructTemplate template;
+    private StructTemplate defaultsTemplate;
+    private Field<Long> x;
+    private Field<Long> y;
+    private Field<String> tags;
+    private Struct struct;
+    private Long[] value;
+    private String[] tagsToAdd;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        x = new Field<>("x", BenchmarkEnvironment.classInfo(Long.class), true, null);
+        y = new Field<>("y", BenchmarkEnvironment.classInfo(Long.class), true, null);
+        tags = new Field<>("tags", BenchmarkEnvironment.classInfo(String.class), false, null);
+        template = BenchmarkEnvironment.template("point", List.of(x, y, tags));
+        // literal defaults, which are evaluated once rather than per struct
+        List<Field<?>> defaults = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Field<Long> number = new Field<>("number" + i, BenchmarkEnvironment.classInfo(Long.class), false, "1 and 2");
+            BenchmarkEnvironment.setDefaultExpression(number, new SimpleLiteral<>(new Long[]{1L, 2L}, Long.class, true));
+            Field<String> text = new Field<>("text" + i, BenchmarkEnvironment.classInfo(String.class), true, "\"Member\"");
+            BenchmarkEnvironment.setDefaultExpression(text, new SimpleLiteral<>("Member", false));
+            defaults.add(number);
+            defaults.add(text);
+        }
+        defaultsTemplate = BenchmarkEnvironment.template("defaults", defaults);
+        structManager = new StructManager();
+        value = new Long[]{42L};
+        tagsToAdd = new String[]{"a", "b"};
+    }
+
+    @Setup(Level.Iteration)
+    public void setupStruct() {
+        struct = structManager.createStruct(template, null);
+        struct.setFieldValue(x, value);
+        struct.setFieldValue(y, value);
+    }
+
+    @Benchmark
+    public Struct createStruct() {
+        return structManager.createStruct(template, null);
+    }
+
+    @Benchmark
+    public Struct createWithLiteralDefaults() {
+        return structManager.createStruct(defaultsTemplate, null);
+    }
+
+    @Benchmark
+    public Long[] getFieldValue() {
+        return struct.getFieldValue(x);
+    }
+
+    @Benchmark
+    public void setFieldValue() {
+        struct.setFieldValue(y, value);
+    }
+
+    @Benchmark
+    public Struct copy() {
+        return Struct.newInstance(struct);
+    }
+
+    @Benchmark
+    public Struct snapshot() {
+        return Struct.newSnapshot(struct);
+    }
+
+    /**
+     * The list modification performed by {@code ExprFieldAccess.modifyListField} once the delta is converted.
+     * The expression itself can't be constructed without Skript's syntax registry.
+     */
+    @Benchmark
+    public void modifyListField() {
+        struct.setFieldValue(tags, null);
+        struct.addFieldValues(tags, tagsToAdd);
+    }
+
+}
@@ -3,9 +3,15 @@ package com.sovdee.oopsk;
 import ch.njol.skript.Skript;
 import ch.njol.skript.SkriptAddon;
 import ch.njol.skript.bstats.bukkit.Metrics;
+import com.sovdee.oopsk.commands.OopskCommand;
 import com.sovdee.oopsk.core.StructManager;
+import com.sovdee.oopsk.core.StructStoreIO;
+import com.sovdee.oopsk.core.StructStoreManager;
 import com.sovdee.oopsk.core.TemplateManager;
 import com.sovdee.oopsk.core.generation.TemporaryClassManager;
+import com.sovdee.oopsk.core.jmx.OopskMBeans;
+import com.sovdee.oopsk.core.metrics.FieldProfiler;
+import com.sovdee.oopsk.core.metrics.StructMetrics;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.IOException;
@@ -17,7 +23,12 @@ public final class Oopsk extends JavaPlugin {
     private static SkriptAddon addon;
     private static StructManager structManager;
     private static TemplateManager templateManager;
+    private static StructStoreManager storeManager;
+    private static StructStoreIO storeIO;
     private static TemporaryClassManager classManager = new TemporaryClassManager();
+    private static final StructMetrics structMetrics = new StructMetrics();
+    private static final FieldProfiler profiler = new FieldProfiler();
+    private static OopskMBeans mBeans;
     private static Logger logger;
 
     public static Oopsk getInstance() {
@@ -36,10 +47,30 @@ public final class Oopsk extends JavaPlugin {
         return templateManager;
     }
 
+    public static StructStoreManager getStoreManager() {
+        return storeManager;
+    }
+
+    public static StructStoreIO getStoreIO() {
+        return storeIO;
+    }
+
     public static TemporaryClassManager getClassManager() {
         return classManager;
     }
 
+    public static StructMetrics getMetrics() {
+        return structMetrics;
+    }
+
+    public static FieldProfiler getProfiler() {
+        return profiler;
+    }
+
+    public static OopskMBeans getMBeans() {
+        return mBeans;
+    }
+
     public static void info(String message) {
         logger.info(message);
     }
@@ -64,8 +95,20 @@ public final class Oopsk extends JavaPlugin {
         addon = Skript.registerAddon(this);
         addon.setLanguageFileDirectory("lang");
         logger = this.getLogger();
+        saveDefaultConfig();
         structManager = new StructManager();
+        structManager.setMigrationBudget((long) (getConfig().getDouble("migration-milliseconds-per-tick", 2) * 1_000_000));
         templateManager = new TemplateManager();
+        storeManager = new StructStoreManager(getDataFolder().toPath().resolve("stores"));
+        storeIO = new StructStoreIO();
+        structMetrics.setEnabled(getConfig().getBoolean("collect-metrics", false));
+        OopskCommand command = new OopskCommand();
+        getCommand("oopsk").setExecutor(command);
+        getCommand("oopsk").setTabCompleter(command);
+        if (getConfig().getBoolean("register-mbeans", true)) {
+            mBeans = new OopskMBeans();
+            mBeans.register();
+        }
         try {
             addon.loadClasses("com.sovdee.oopsk");
         } catch (IOException e) {
@@ -80,6 +123,16 @@ public final class Oopsk extends JavaPlugin {
     public void onDisable() {
         // Plugin shutdown logic
         Oopsk.info("oopsk has been disabled.");
+        if (mBeans != null)
+            mBeans.unregisterAll();
+        mBeans = null;
+        // finish any background saves before the stores are closed
+        if (storeIO != null)
+            storeIO.shutdown();
+        storeIO = null;
+        if (storeManager != null)
+            storeManager.closeAll();
+        storeManager = null;
         structManager = null;
         templateManager = null;
         instance = null;
@@ -0,0 +1,133 @@
+package com.sovdee.oopsk.commands;
+
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.metrics.FieldProfiler;
+import com.sovdee.oopsk.core.metrics.FieldProfiler.Entry;
+import com.sovdee.oopsk.core.metrics.StructMetrics;
+import com.sovdee.oopsk.core.metrics.StructMetrics.Snapshot;
+import com.sovdee.oopsk.core.metrics.StructMetrics.TemplateSnapshot;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The /oopsk command. Shows and resets the struct metrics, and controls the field profiler.
+ */
+public class OopskCommand implements TabExecutor {
+
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, String @NotNull [] args) {
+        if (args.length == 0)
+            return false;
+        if (args[0].equalsIgnoreCase("profile"))
+            return profile(sender, args);
+        if (!args[0].equalsIgnoreCase("stats"))
+            return false;
+
+        StructMetrics metrics = Oopsk.getMetrics();
+        if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+            metrics.reset();
+            sender.sendMessage(ChatColor.GRAY + "oopsk metrics have been reset.");
+            return true;
+        }
+
+        Snapshot snapshot = metrics.snapshot(Oopsk.getStructManager());
+        sender.sendMessage(ChatColor.GOLD + "oopsk metrics" + ChatColor.GRAY + " (last " + snapshot.elapsed().toSeconds() + "s"
+                + (metrics.isEnabled() ? "" : ", collection disabled") + ")");
+        for (TemplateSnapshot template : snapshot.templates().values())
+            sendTemplate(sender, snapshot, template);
+        sendTemplate(sender, snapshot, snapshot.total());
+        return true;
+    }
+
+    private static void sendTemplate(CommandSender sender, Snapshot snapshot, TemplateSnapshot template) {
+        String name = template.template().equals("*") ? "total" : template.template();
+        sender.sendMessage(ChatColor.YELLOW + name + ChatColor.GRAY + ": "
+                + template.liveInstances() + " live, " + template.orphanedInstances() + " orphaned, "
+                + template.created() + " created (" + rate(snapshot, template.created()) + ")");
+        sender.sendMessage(ChatColor.GRAY + "  reads " + template.fieldReads() + " (" + rate(snapshot, template.fieldReads()) + ")"
+                + ", writes " + template.fieldWrites() + " (" + rate(snapshot, template.fieldWrites()) + ")"
+                + ", conversions " + template.conversions()
+                + ", dynamic " + template.dynamicEvaluations() + " (avg " + average(template.dynamicEvaluationNanos(), template.dynamicEvaluations()) + ")"
+                + ", migrations " + template.migrations() + " (avg " + average(template.migrationNanos(), template.migrations()) + ")");
+    }
+
+    private static boolean profile(CommandSender sender, String[] args) {
+        FieldProfiler profiler = Oopsk.getProfiler();
+        String action = args.length > 1 ? args[1].toLowerCase(Locale.ENGLISH) : "report";
+        switch (action) {
+            case "start" -> {
+                int sampleRate = args.length > 2 ? parsePositive(args[2], -1) : profiler.getSampleRate();
+                if (sampleRate == -1) {
+                    sender.sendMessage(ChatColor.RED + "The sample rate must be a positive whole number.");
+                    return true;
+                }
+                profiler.start(sampleRate);
+                sender.sendMessage(ChatColor.GRAY + "Profiling 1 in " + sampleRate + " field accesses.");
+            }
+            case "stop" -> {
+                profiler.stop();
+                sender.sendMessage(ChatColor.GRAY + "Stopped profiling. Use /oopsk profile report to see the results.");
+            }
+            case "reset" -> {
+                profiler.reset();
+                sender.sendMessage(ChatColor.GRAY + "Profiler samples have been discarded.");
+            }
+            case "report" -> {
+                int limit = args.length > 2 ? parsePositive(args[2], 10) : 10;
+                List<Entry> entries = profiler.report(limit);
+                sender.sendMessage(ChatColor.GOLD + "oopsk field profile" + ChatColor.GRAY + " (1 in " + profiler.getSampleRate()
+                        + (profiler.isRunning() ? ", running" : ", stopped") + ")");
+                if (entries.isEmpty())
+                    sender.sendMessage(ChatColor.GRAY + "No samples yet. Use /oopsk profile start [sample rate] to start profiling.");
+                int rank = 1;
+                for (Entry entry : entries) {
+                    sender.sendMessage(ChatColor.YELLOW + "" + rank++ + ". " + entry.site() + ChatColor.GRAY
+                            + ": ~" + entry.estimatedCalls() + " calls, ~" + String.format(Locale.ENGLISH, "%.2fms", entry.estimatedNanos() / 1e6)
+                            + " total, " + String.format(Locale.ENGLISH, "%.1fµs", entry.averageNanos() / 1000) + " avg"
+                            + " (" + entry.samples() + " samples)");
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parsePositive(String string, int fallback) {
+        try {
+            int value = Integer.parseInt(string);
+            return value > 0 ? value : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static String rate(Snapshot snapshot, long count) {
+        return String.format(Locale.ENGLISH, "%.1f/s", snapshot.perSecond(count));
+    }
+
+    private static String average(long nanos, long count) {
+        if (count == 0)
+            return "-";
+        return String.format(Locale.ENGLISH, "%.1fµs", nanos / (count * 1000.0));
+    }
+
+    @Override
+    public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, String @NotNull [] args) {
+        if (args.length == 1)
+            return List.of("stats", "profile");
+        if (args.length == 2 && args[0].equalsIgnoreCase("stats"))
+            return List.of("reset");
+        if (args.length == 2 && args[0].equalsIgnoreCase("profile"))
+            return List.of("start", "stop", "report", "reset");
+        return List.of();
+    }
+
+}
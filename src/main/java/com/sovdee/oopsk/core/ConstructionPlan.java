@@ -0,0 +1,109 @@
+package com.sovdee.oopsk.core;
+
+import ch.njol.skript.lang.Expression;
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.lang.converter.Converter;
+import org.skriptlang.skript.lang.converter.Converters;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A precompiled recipe for creating structs of one template with initial values.
+ * <br>
+ * Initial values are given by field name, but a plan resolves them to slots once, when it's compiled, along with the
+ * converter needed to turn each expression's values into the field's type. Creating a struct is then a single pass over
+ * the slots: evaluate the initial value or the default, convert it if needed, and store it.
+ * <br>
+ * Plans are tied to the template they were compiled for. Recompile them if the template is reloaded.
+ */
+public final class ConstructionPlan {
+
+    private final StructTemplate template;
+    private final Field<?>[] fields;
+    private final Expression<?>[] expressions;
+    private final Converter<Object, ?>[] converters;
+
+    /**
+     * Compiles a plan for creating structs of a template with the given initial values.
+     *
+     * @param template      The template to create structs of.
+     * @param initialValues The initial values, by field name. Names that aren't non-dynamic fields of the template are ignored.
+     */
+    @SuppressWarnings("unchecked")
+    public ConstructionPlan(@NotNull StructTemplate template, @Nullable Map<String, Expression<?>> initialValues) {
+        this.template = template;
+        int fieldCount = template.getFieldCount();
+        this.fields = template.getFields().toArray(new Field<?>[0]);
+        this.expressions = new Expression<?>[fieldCount];
+        this.converters = new Converter[fieldCount];
+        for (int slot = 0; slot < fieldCount; slot++) {
+            Field<?> field = fields[slot];
+            Expression<?> expression = initialValues == null || field.dynamic() ? null : initialValues.get(field.name());
+            if (expression == null)
+                continue;
+            expressions[slot] = expression;
+            Class<?> fieldType = field.type().getC();
+            Class<?> returnType = expression.getReturnType();
+            // no converter is needed if the types already match, and none can be picked ahead of time for objects
+            if (!fieldType.isAssignableFrom(returnType) && returnType != Object.class)
+                converters[slot] = (Converter<Object, ?>) Converters.getConverter(returnType, fieldType);
+        }
+    }
+
+    /**
+     * @return The template this plan creates structs of.
+     */
+    public StructTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Creates a struct following this plan. The struct is not registered; see {@link StructManager#createStruct(ConstructionPlan, Event)}.
+     *
+     * @param event The event to evaluate the initial and default values in.
+     * @return The new struct.
+     */
+    Struct create(@Nullable Event event) {
+        Object[][] values = new Object[fields.length][];
+        for (int slot = 0; slot < fields.length; slot++) {
+            Field<?> field = fields[slot];
+            // dynamic fields are evaluated on access
+            if (field.dynamic())
+                continue;
+            Expression<?> expression = expressions[slot];
+            values[slot] = expression == null ? field.defaultValue(event) : evaluate(slot, field, expression, event);
+        }
+        return template.getFactory().restore(template, values);
+    }
+
+    private Object[] evaluate(int slot, Field<?> field, Expression<?> expression, @Nullable Event event) {
+        Object[] value = expression.getArray(event);
+        if (value == null || value.length == 0)
+            return field.emptyValue();
+        Class<?> fieldType = field.type().getC();
+        // expressions may return arrays of a broader type than they declare, so the array itself is checked
+        if (fieldType.isAssignableFrom(value.getClass().getComponentType()))
+            return value;
+        Converter<Object, ?> converter = converters[slot];
+        Object[] converted;
+        if (converter != null) {
+            converted = Arrays.copyOf(field.emptyValue(), value.length);
+            int count = 0;
+            for (Object element : value) {
+                Object convertedElement = converter.convert(element);
+                if (convertedElement != null)
+                    converted[count++] = convertedElement;
+            }
+            if (count < converted.length)
+                converted = Arrays.copyOf(converted, count);
+        } else {
+            // values that couldn't be converted ahead of time
+            converted = Converters.convert(value, fieldType);
+        }
+        return converted == null || converted.length == 0 ? field.emptyValue() : converted;
+    }
+
+}
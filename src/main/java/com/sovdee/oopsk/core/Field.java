@@ -3,8 +3,12 @@ package com.sovdee.oopsk.core;
 import ch.njol.skript.Skript;
 import ch.njol.skript.classes.ClassInfo;
 import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.Literal;
 import ch.njol.skript.lang.ParseContext;
 import ch.njol.skript.lang.SkriptParser;
+import ch.njol.skript.lang.VariableString;
+import ch.njol.skript.lang.util.ContextlessEvent;
+import ch.njol.skript.registrations.Classes;
 import ch.njol.skript.util.LiteralUtils;
 import org.bukkit.event.Event;
 import org.jetbrains.annotations.Nullable;
@@ -14,8 +18,10 @@ import java.lang.reflect.Array;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 /**
@@ -26,15 +32,24 @@ public final class Field<T> {
 
     public enum Modifier {
         CONSTANT,
-        DYNAMIC
+        DYNAMIC,
+        CACHED
     }
 
+    private static final ThreadLocal<Set<String>> dependencyCollector = new ThreadLocal<>();
+
     private final String name;
     private final ClassInfo<T> type;
     private final boolean single;
     private final @Nullable String defaultExpressionString;
     private Expression<? extends T> defaultExpression;
+    private T @Nullable [] constantDefault;
     private final Set<Modifier> modifiers;
+    private final int hashCode;
+    private final T[] emptyValue;
+    private final boolean immutableValues;
+    private int slot = -1;
+    private Set<String> dependencies = Set.of();
 
     /**
      * Creates a new field with the given name, type, and default value.
@@ -64,6 +79,17 @@ public final class Field<T> {
         this.single = single;
         this.modifiers = modifiers;
         this.defaultExpressionString = defaultExpressionString;
+        this.hashCode = Objects.hash(name, type, single, modifiers);
+        //noinspection unchecked
+        this.emptyValue = (T[]) Array.newInstance(type.getC(), 0);
+        this.immutableValues = isImmutable(type.getC());
+    }
+
+    private static boolean isImmutable(Class<?> type) {
+        if (type == String.class || type == Boolean.class || type == Character.class || type == UUID.class || type.isEnum())
+            return true;
+        // the boxed primitives, and Number fields, which only ever hold them in practice
+        return Number.class.isAssignableFrom(type) && type.getPackageName().equals("java.lang");
     }
 
     /**
@@ -74,17 +100,55 @@ public final class Field<T> {
         if (defaultExpression != null || defaultExpressionString == null)
             return true;
 
-        // parse the default value
-        //noinspection unchecked
-        defaultExpression = new SkriptParser(defaultExpressionString, SkriptParser.ALL_FLAGS, ParseContext.DEFAULT).parseExpression(type.getC());
-        if (defaultExpression == null || LiteralUtils.hasUnparsedLiteral(defaultExpression)) {
+        // parse the default value, collecting the fields of 'this' that it reads
+        Set<String> dependencies = new HashSet<>();
+        dependencyCollector.set(dependencies);
+        Expression<? extends T> expression;
+        try {
+            //noinspection unchecked
+            expression = new SkriptParser(defaultExpressionString, SkriptParser.ALL_FLAGS, ParseContext.DEFAULT).parseExpression(type.getC());
+        } finally {
+            dependencyCollector.remove();
+        }
+        this.dependencies = Collections.unmodifiableSet(dependencies);
+        if (expression == null || LiteralUtils.hasUnparsedLiteral(expression)) {
             Skript.error("Invalid default value for the given type: '" + defaultExpressionString + "'");
-            defaultExpression = null;
             return false;
         }
+        setDefaultExpression(expression);
         return true;
     }
 
+    /**
+     * Sets the parsed default value, and evaluates it once now if it's a literal.
+     * @param expression The parsed default value.
+     */
+    private void setDefaultExpression(Expression<? extends T> expression) {
+        defaultExpression = expression;
+        constantDefault = dynamic() ? null : foldConstant(expression);
+    }
+
+    /**
+     * Evaluates a default value that's always the same, like {@code 5}, {@code cow} or {@code "Member"}.
+     * @param expression The default value.
+     * @return The value, or null if it must be evaluated for each struct.
+     */
+    private T @Nullable [] foldConstant(Expression<? extends T> expression) {
+        // 'or' lists pick a different value each time
+        if (!expression.isSingle() && !expression.getAnd())
+            return null;
+        T[] value;
+        if (expression instanceof Literal<? extends T> literal) {
+            value = literal.getAll();
+        } else if (expression instanceof VariableString string && string.isSimple()) {
+            //noinspection unchecked
+            value = (T[]) string.getArray(ContextlessEvent.get());
+        } else {
+            return null;
+        }
+        return value.length == 0 ? emptyValue : value;
+    }
+
     /**
      * @return Whether this field is constant.
      */
@@ -99,18 +163,94 @@ public final class Field<T> {
         return modifiers.contains(Modifier.DYNAMIC);
     }
 
+    /**
+     * @return Whether this field is a cached dynamic field, which only re-evaluates when a field it depends on changes.
+     */
+    public boolean cached() {
+        return modifiers.contains(Modifier.CACHED);
+    }
+
+    /**
+     * Records that the default value currently being parsed reads the field with the given name from 'this' struct.
+     * Called by field access expressions during parsing. Does nothing if no default value is being parsed.
+     *
+     * @param fieldName The name of the field being read.
+     */
+    public static void recordDependency(String fieldName) {
+        Set<String> dependencies = dependencyCollector.get();
+        if (dependencies != null)
+            dependencies.add(fieldName);
+    }
+
+    /**
+     * @return The names of the fields of 'this' struct that the default value reads. Empty until the default value is parsed.
+     */
+    public @Unmodifiable Set<String> dependencies() {
+        return dependencies;
+    }
+
     /**
      * Evaluates the default value of this field.
      *
      * @param event The event to evaluate the default value in.
-     * @return The default value of this field, or an empty array if no default value is set.
+     * @return The default value of this field, or {@link #emptyValue()} if no default value is set or it has no value.
      */
     public T[] defaultValue(Event event) {
-        if (defaultExpression == null) {
+        if (defaultExpression == null)
+            return emptyValue;
+        if (constantDefault != null) {
+            // value arrays are never modified, so immutable values can be shared by every struct
+            if (immutableValues || constantDefault.length == 0)
+                return constantDefault;
             //noinspection unchecked
-            return (T[]) Array.newInstance(type.getC(), 0);
+            return (T[]) Classes.clone(constantDefault);
         }
-        return defaultExpression.getArray(event);
+        T[] value = defaultExpression.getArray(event);
+        return value.length == 0 ? emptyValue : value;
+    }
+
+    /**
+     * @return The default value, if it's the same array for every struct, or null if it has to be evaluated or cloned per struct.
+     * @see #defaultValue(Event)
+     */
+    T @Nullable [] sharedDefault() {
+        if (defaultExpression == null)
+            return emptyValue;
+        if (constantDefault != null && (immutableValues || constantDefault.length == 0))
+            return constantDefault;
+        return null;
+    }
+
+    /**
+     * Structs never modify value arrays once they're stored, so a single empty array is shared by every unset value of this field.
+     *
+     * @return The empty array of this field's type.
+     */
+    public T[] emptyValue() {
+        return emptyValue;
+    }
+
+    /**
+     * @return Whether values of this field's type can never change, like numbers, texts and enums.
+     *         Arrays of such values can be shared between structs instead of cloned.
+     */
+    public boolean immutableValues() {
+        return immutableValues;
+    }
+
+    /**
+     * @return The slot this field was assigned by the last {@link StructTemplate} it was added to, or -1 if none.
+     */
+    int slot() {
+        return slot;
+    }
+
+    /**
+     * Assigns the slot this field occupies in its template's storage layout.
+     * @param slot The slot index.
+     */
+    void slot(int slot) {
+        this.slot = slot;
     }
 
     /**
@@ -161,12 +301,13 @@ public final class Field<T> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, type, single, modifiers);
+        return hashCode;
     }
 
     @Override
     public String toString() {
         return (constant() ? "constant " : "") +
+                (cached() ? "cached " : "") +
                 (dynamic() ? "dynamic " : "") +
                 "field '" + name() + "' (" + type().getName().toString(!single) + ")";
     }
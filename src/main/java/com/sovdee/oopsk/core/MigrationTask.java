@@ -0,0 +1,61 @@
+package com.sovdee.oopsk.core;
+
+import com.sovdee.oopsk.Oopsk;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Iterator;
+
+/**
+ * Updates the structs of a reloaded template a few at a time, spending at most a fixed amount of time per tick.
+ * Structs that are accessed before the task reaches them are updated on access, so this only bounds how long
+ * untouched structs keep their old layout.
+ */
+class MigrationTask extends BukkitRunnable {
+
+    private static final int PROGRESS_INTERVAL_TICKS = 20;
+
+    private final StructTemplate template;
+    // iterates the registry's weak entries, so structs collected mid-migration are skipped rather than kept alive
+    private final Iterator<Struct> structs;
+    private final int total;
+    private final long nanosPerTick;
+    private final long startTime = System.nanoTime();
+    private int migrated;
+    private int ticks;
+
+    /**
+     * @param template     The template the structs are migrating to.
+     * @param structs      The structs to migrate.
+     * @param nanosPerTick The maximum time to spend migrating each tick.
+     */
+    MigrationTask(@NotNull StructTemplate template, @NotNull StructRegistry structs, long nanosPerTick) {
+        this.template = template;
+        this.total = structs.size();
+        this.structs = structs.iterator();
+        this.nanosPerTick = nanosPerTick;
+    }
+
+    @Override
+    public void run() {
+        // a newer reload will start its own migration
+        if (template.isRetired()) {
+            cancel();
+            return;
+        }
+        long deadline = System.nanoTime() + nanosPerTick;
+        while (structs.hasNext() && System.nanoTime() < deadline) {
+            structs.next().migrateIfRetired();
+            migrated++;
+        }
+        ticks++;
+        if (!structs.hasNext()) {
+            cancel();
+            long millis = (System.nanoTime() - startTime) / 1_000_000;
+            Oopsk.info("Updated " + migrated + " existing structs of template '" + template.getName() + "' over " + ticks + " ticks (" + millis + " ms).");
+        } else if (ticks % PROGRESS_INTERVAL_TICKS == 0) {
+            Oopsk.info("Updating existing structs of template '" + template.getName() + "': " + migrated + "/" + total + ".");
+        }
+    }
+
+}
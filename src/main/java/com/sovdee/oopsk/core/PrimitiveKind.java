@@ -0,0 +1,117 @@
+package com.sovdee.oopsk.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * How a single number or boolean field is stored in a struct's primitive slots instead of a boxed value array.
+ * Each kind encodes a value as a long word and a flag bit, and boxes it back into the field's exact type.
+ */
+enum PrimitiveKind {
+
+    /**
+     * Long, integer, short and byte fields, stored as a long.
+     */
+    INTEGER,
+    /**
+     * Double and float fields, stored as the bits of a double.
+     */
+    DECIMAL,
+    /**
+     * Number fields, stored as either a long or the bits of a double. The flag is set for doubles.
+     * Numbers of other types are stored as doubles.
+     */
+    NUMBER,
+    /**
+     * Boolean fields, stored only in the flag.
+     */
+    BOOLEAN;
+
+    /**
+     * @param field The field to store.
+     * @return How the field is stored, or null if it's stored as a boxed array.
+     */
+    static @Nullable PrimitiveKind of(@NotNull Field<?> field) {
+        if (!field.single() || field.dynamic())
+            return null;
+        Class<?> type = field.type().getC();
+        if (type == Long.class || type == Integer.class || type == Short.class || type == Byte.class)
+            return INTEGER;
+        if (type == Double.class || type == Float.class)
+            return DECIMAL;
+        if (type == Number.class)
+            return NUMBER;
+        if (type == Boolean.class)
+            return BOOLEAN;
+        return null;
+    }
+
+    /**
+     * @return Whether this kind needs a long word, rather than just a flag bit.
+     */
+    boolean usesWord() {
+        return this != BOOLEAN;
+    }
+
+    /**
+     * @param value The value to encode. Must be a number, or a boolean for {@link #BOOLEAN}.
+     * @return The value's word.
+     */
+    long word(@NotNull Object value) {
+        return switch (this) {
+            case INTEGER -> ((Number) value).longValue();
+            case DECIMAL -> Double.doubleToLongBits(((Number) value).doubleValue());
+            case NUMBER -> isIntegral(value)
+                    ? ((Number) value).longValue()
+                    : Double.doubleToLongBits(((Number) value).doubleValue());
+            case BOOLEAN -> 0;
+        };
+    }
+
+    /**
+     * @param value The value to encode. Must be a number, or a boolean for {@link #BOOLEAN}.
+     * @return The value's flag.
+     */
+    boolean flag(@NotNull Object value) {
+        return switch (this) {
+            case INTEGER, DECIMAL -> false;
+            case NUMBER -> !isIntegral(value);
+            case BOOLEAN -> (Boolean) value;
+        };
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Boxes an encoded value into a single-element array of the field's type.
+     *
+     * @param word The value's word.
+     * @param flag The value's flag.
+     * @param type The type of the field.
+     * @return The boxed value.
+     */
+    Object[] box(long word, boolean flag, Class<?> type) {
+        return switch (this) {
+            case INTEGER -> {
+                if (type == Integer.class)
+                    yield new Integer[]{(int) word};
+                if (type == Short.class)
+                    yield new Short[]{(short) word};
+                if (type == Byte.class)
+                    yield new Byte[]{(byte) word};
+                yield new Long[]{word};
+            }
+            case DECIMAL -> {
+                double value = Double.longBitsToDouble(word);
+                if (type == Float.class)
+                    yield new Float[]{(float) value};
+                yield new Double[]{value};
+            }
+            case NUMBER -> new Number[]{flag ? (Number) Double.longBitsToDouble(word) : (Number) word};
+            case BOOLEAN -> new Boolean[]{flag};
+        };
+    }
+
+}
@@ -3,50 +3,97 @@ package com.sovdee.oopsk.core;
 import ch.njol.skript.lang.Expression;
 import ch.njol.skript.lang.util.ContextlessEvent;
 import ch.njol.skript.registrations.Classes;
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.metrics.FieldProfiler;
+import com.sovdee.oopsk.core.metrics.FieldProfiler.Kind;
+import com.sovdee.oopsk.core.metrics.TemplateMetrics;
 import com.sovdee.oopsk.events.DynamicFieldEvalEvent;
+import org.bukkit.Bukkit;
 import org.bukkit.event.Event;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.lang.comparator.Comparators;
+import org.skriptlang.skript.lang.comparator.Relation;
 import org.skriptlang.skript.lang.converter.Converters;
 
 import java.lang.reflect.Array;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 /**
  * A struct is an instance of a struct template.
- * It contains a reference to the template and a map of field values.
+ * It contains a reference to the template and the field values, indexed by their template's slots.
+ * Single number and boolean fields are stored unboxed, and are only boxed into arrays when they're read.
+ * Structs use identity for {@link #equals(Object)} and {@link #hashCode()}; see {@link #valueEquals(Struct)} for value comparisons.
+ * <br>
+ * Structs are only updated to reloaded templates on the main thread, under their lock. Other threads access fields under
+ * the same lock, so they never pair one template's slots with another template's values, but changes made on different
+ * threads at the same time may still overwrite each other.
  */
 public class Struct {
     private StructTemplate template;
-    private final Map<Field<?>, Object[]> fieldValues;
+    private Object[][] fieldValues;
+    // unboxed values of single number and boolean fields, see PrimitiveKind
+    private long[] primitives;
+    private long present;
+    private long flags;
+    // copy-on-write state, see Struct(Struct, boolean)
+    private boolean valuesShared;
+    private long @Nullable [] sharedSlots;
+    // changed whenever cached dynamic values are discarded, so values evaluated before then aren't cached. Guarded by this
+    private int invalidations;
 
+    private static final long[] NO_PRIMITIVES = new long[0];
+    // stands in for the value of a cached dynamic field that has not been evaluated yet
+    private static final Object[] UNEVALUATED = new Object[0];
+
+    /**
+     * Creates a new instance of the template's custom class.
+     *
+     * @param template The template to create the struct from.
+     * @param event    The event to evaluate the default values in.
+     * @return The new struct.
+     */
     public static Struct newInstance(@NotNull StructTemplate template, @Nullable Event event) {
-        Class<? extends Struct> structClass = template.getCustomClass();
-        try {
-            return structClass.getDeclaredConstructor(StructTemplate.class, Event.class).newInstance(template, event);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create new instance of struct class " + structClass.getName(), e);
-        }
+        return template.getFactory().create(template, event);
     }
 
+    /**
+     * Creates a copy of the given struct, using the custom class of its template.
+     *
+     * @param source The struct to copy.
+     * @return The new struct.
+     */
     public static Struct newInstance(Struct source) {
-        Class<? extends Struct> structClass = source.getTemplate().getCustomClass();
-        try {
-            return structClass.getDeclaredConstructor(Struct.class).newInstance(source);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create new instance of struct class " + structClass.getName(), e);
-        }
+        return source.getTemplate().getFactory().copy(source);
     }
 
+    /**
+     * Creates a copy-on-write copy of the given struct, using the custom class of its template.
+     * The copy shares its values with the source until either struct reads or changes them, so creating it does not
+     * depend on the size of the struct.
+     *
+     * @param source The struct to copy.
+     * @return The new struct.
+     * @see #Struct(Struct, boolean)
+     */
+    public static Struct newSnapshot(Struct source) {
+        return source.getTemplate().getFactory().snapshot(source);
+    }
+
+    /**
+     * Creates a new instance of the template's custom class, with the given initial values.
+     *
+     * @param template      The template to create the struct from.
+     * @param event         The event to evaluate the default and initial values in.
+     * @param initialValues The initial values to set in the struct. This is a map of field names to expressions.
+     * @return The new struct.
+     */
     public static Struct newInstance(@NotNull StructTemplate template, @Nullable Event event, @Nullable Map<String, Expression<?>> initialValues) {
-        Class<? extends Struct> structClass = template.getCustomClass();
-        try {
-            return structClass.getDeclaredConstructor(StructTemplate.class, Event.class, Map.class).newInstance(template, event, initialValues);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create new instance of struct class " + structClass.getName(), e);
-        }
+        return template.getFactory().create(template, event, initialValues);
     }
 
     /**
@@ -58,9 +105,13 @@ public class Struct {
      */
     protected Struct(@NotNull StructTemplate template, @Nullable Event event) {
         this.template = template;
-        fieldValues = new HashMap<>();
-        for (Field<?> field : template.getFields()) {
-            fieldValues.put(field, field.defaultValue(event));
+        fieldValues = new Object[template.getFieldCount()][];
+        primitives = newPrimitives(template);
+        for (int slot = 0; slot < fieldValues.length; slot++) {
+            Field<?> field = template.getField(slot);
+            // dynamic fields are evaluated on access
+            if (!field.dynamic())
+                put(slot, field.defaultValue(event));
         }
     }
 
@@ -72,15 +123,93 @@ public class Struct {
      * @see StructManager#createStruct(StructTemplate, Event)
      */
     protected Struct(Struct source) {
+        this(source, false);
+    }
+
+    /**
+     * Copy constructor for creating a struct that's a 'deep' copy of another struct, either right away or lazily.
+     * <br>
+     * A copy-on-write copy starts out sharing the source's values. Both structs mark every slot as shared, and the
+     * first time either one reads or changes a shared slot, it clones that field's values for itself, so values that
+     * Skript changes in place, like vectors, are never visible to the other struct. Fields of immutable types are never cloned.
+     *
+     * @param source      The struct to copy from.
+     * @param copyOnWrite Whether to share the source's values until they're used, rather than cloning them now.
+     * @see #Struct(Struct)
+     */
+    protected Struct(@NotNull Struct source, boolean copyOnWrite) {
         this.template = source.template;
-        fieldValues = new HashMap<>();
-        for (Map.Entry<Field<?>, Object[]> entry : source.fieldValues.entrySet()) {
-            Field<?> field = entry.getKey();
-            Object[] value = entry.getValue();
-            // clone the value array
-            Object[] clonedValue = (Object[]) Classes.clone(value);
-            fieldValues.put(field, clonedValue);
+        primitives = source.primitives.length == 0 ? NO_PRIMITIVES : source.primitives.clone();
+        present = source.present;
+        flags = source.flags;
+        if (copyOnWrite) {
+            fieldValues = source.fieldValues;
+            valuesShared = true;
+            sharedSlots = allShared(fieldValues.length);
+            source.valuesShared = true;
+            source.sharedSlots = allShared(fieldValues.length);
+            return;
         }
+        fieldValues = new Object[source.fieldValues.length][];
+        for (int slot = 0; slot < fieldValues.length; slot++) {
+            Object[] value = source.fieldValues[slot];
+            if (value == null)
+                continue;
+            // value arrays are never modified once stored, so empty and immutable ones can be shared
+            if (value.length == 0 || template.getField(slot).immutableValues()) {
+                fieldValues[slot] = value;
+            } else {
+                fieldValues[slot] = (Object[]) Classes.clone(value);
+            }
+        }
+    }
+
+    private static long[] allShared(int slots) {
+        long[] shared = new long[(slots + 63) >>> 6];
+        Arrays.fill(shared, -1L);
+        return shared;
+    }
+
+    /**
+     * Stops sharing the slot array with copy-on-write copies, so slots can be replaced.
+     */
+    private void ownValues() {
+        if (!valuesShared)
+            return;
+        fieldValues = fieldValues.clone();
+        valuesShared = false;
+    }
+
+    /**
+     * Stops sharing a slot's values with copy-on-write copies, cloning them if they're mutable.
+     * @param slot The slot to stop sharing.
+     * @return The slot's values, now only held by this struct.
+     */
+    private Object[] ownSlot(int slot) {
+        Object[] value = fieldValues[slot];
+        long[] shared = sharedSlots;
+        if (shared == null || (shared[slot >>> 6] & (1L << slot)) == 0)
+            return value;
+        shared[slot >>> 6] &= ~(1L << slot);
+        // value arrays are never modified once stored, so empty and immutable ones can stay shared
+        if (value == null || value.length == 0 || template.getField(slot).immutableValues())
+            return value;
+        ownValues();
+        value = (Object[]) Classes.clone(value);
+        fieldValues[slot] = value;
+        return value;
+    }
+
+    /**
+     * Stops sharing all values with copy-on-write copies.
+     */
+    private void ownAllSlots() {
+        if (sharedSlots == null)
+            return;
+        for (int slot = 0; slot < fieldValues.length; slot++)
+            ownSlot(slot);
+        ownValues();
+        sharedSlots = null;
     }
 
     /**
@@ -93,8 +222,10 @@ public class Struct {
      */
     protected Struct(@NotNull StructTemplate template, @Nullable Event event, @Nullable Map<String, Expression<?>> initialValues) {
         this.template = template;
-        fieldValues = new HashMap<>();
-        for (Field<?> field : template.getFields()) {
+        fieldValues = new Object[template.getFieldCount()][];
+        primitives = newPrimitives(template);
+        for (int slot = 0; slot < fieldValues.length; slot++) {
+            Field<?> field = template.getField(slot);
             // skip dynamic fields
             if (field.dynamic())
                 continue;
@@ -113,111 +244,589 @@ public class Struct {
                         }
                     }
                     // replace null values with empty arrays
-                    if (value == null)
-                        value = (Object[]) Array.newInstance(field.type().getC(), 0);
-                    fieldValues.put(field, value);
+                    if (value == null || value.length == 0)
+                        value = field.emptyValue();
+                    put(slot, value);
                     continue;
                 }
             }
-            fieldValues.put(field, field.defaultValue(event));
+            put(slot, field.defaultValue(event));
+        }
+    }
+
+    /**
+     * Creates a struct with the given values, without evaluating any defaults.
+     * Used when loading saved structs and when following a {@link ConstructionPlan}.
+     *
+     * @param template    The template of the struct.
+     * @param fieldValues The values of the struct, indexed by the template's slots. Null for dynamic fields.
+     * @see StructSerializer
+     */
+    protected Struct(@NotNull StructTemplate template, Object[] @NotNull [] fieldValues) {
+        this.template = template;
+        this.fieldValues = fieldValues;
+        unpackPrimitives();
+    }
+
+    private static long[] newPrimitives(StructTemplate template) {
+        int words = template.getPrimitiveWordCount();
+        return words == 0 ? NO_PRIMITIVES : new long[words];
+    }
+
+    /**
+     * Moves the values of fields that are stored unboxed out of {@link #fieldValues} and into the primitive slots.
+     */
+    private void unpackPrimitives() {
+        primitives = newPrimitives(template);
+        present = 0;
+        flags = 0;
+        for (int slot = 0; slot < fieldValues.length; slot++) {
+            if (template.getPrimitiveKind(slot) == null)
+                continue;
+            Object[] value = fieldValues[slot];
+            fieldValues[slot] = null;
+            put(slot, value);
         }
     }
 
     /**
      * @return The template this struct is based on.
      */
-    public StructTemplate getTemplate() {
+    public final StructTemplate getTemplate() {
+        migrateIfRetired();
         return template;
     }
 
+    /**
+     * Updates this struct to the current template of the same name if its template has been removed or reloaded.
+     * Structs are not updated when a template is reloaded, but the first time they're accessed afterward,
+     * or when a {@link MigrationTask} reaches them. Structs whose template no longer exists are left as they are,
+     * and their template is marked as orphaned, so they don't look for a replacement again until one is loaded.
+     * Off the main thread, structs are left on their old template until the main thread uses them.
+     */
+    void migrateIfRetired() {
+        if (template.isMigratable() && onMainThread())
+            migrate();
+    }
+
+    /**
+     * @return Whether this is the thread structs are updated to reloaded templates on.
+     *         Any thread is, if no server is running, like in benchmarks.
+     */
+    private static boolean onMainThread() {
+        return Bukkit.getServer() == null || Bukkit.isPrimaryThread();
+    }
+
+    private synchronized void migrate() {
+        StructTemplate current = template;
+        if (!current.isMigratable())
+            return; // already migrated
+        TemplateManager templateManager = Oopsk.getTemplateManager();
+        StructTemplate replacement = templateManager.getTemplate(current.getName());
+        if (replacement == null) {
+            templateManager.markOrphaned(current);
+            return;
+        }
+        if (replacement == current)
+            return;
+        TemplateMetrics metrics = replacement.getMetrics();
+        long start = metrics.isEnabled() ? System.nanoTime() : 0;
+        if (updateFromTemplate(replacement))
+            replacement.warnMigrationDataLoss();
+        if (start != 0)
+            metrics.recordMigration(System.nanoTime() - start);
+    }
+
     /**
      * Gets the value of a field in this struct.
      * @param field The field to get the value of.
      * @return The value of the field, or null if the field does not exist in this struct.
+     *         The array may be shared with other structs, so it must not be modified.
      */
-    public <T> T[] getFieldValue(Field<T> field) {
-        if (field.dynamic())
-            return field.defaultValue(new DynamicFieldEvalEvent(this));
+    public final <T> T[] getFieldValue(Field<T> field) {
+        migrateIfRetired();
+        if (field.dynamic() && !field.cached())
+            return evaluateDynamic(field);
+        // read before the value, so a value evaluated from outdated dependencies is never cached
+        int invalidations = this.invalidations;
+        Object[] value = onMainThread() ? readField(field) : readFieldLocked(field);
+        // cached dynamic fields store their last value until a dependency changes. They're evaluated without holding
+        // the lock, as they may use other structs
+        if (value == UNEVALUATED) {
+            value = evaluateDynamic(field);
+            cacheField(invalidations, field, value);
+        }
         //noinspection unchecked
-        return (T[]) fieldValues.get(field);
+        return (T[]) value;
+    }
+
+    /**
+     * Reads the stored value of a field.
+     * @return The value, null if the field is not in the template, or {@link #UNEVALUATED} for cached dynamic fields without a value.
+     */
+    private Object[] readField(Field<?> field) {
+        int slot = template.getSlot(field);
+        if (slot == -1)
+            return null;
+        if (template.getPrimitiveKind(slot) != null)
+            return box(slot);
+        // values handed out may be changed in place, so they stop being shared with copies
+        Object[] value = ownSlot(slot);
+        return value == null && field.dynamic() ? UNEVALUATED : value;
+    }
+
+    private synchronized Object[] readFieldLocked(Field<?> field) {
+        return readField(field);
+    }
+
+    /**
+     * Stores the value of a cached dynamic field, unless cached values were discarded since it was evaluated, as it may
+     * be outdated then. Cached values are discarded under the lock as well, so they can't be discarded in between.
+     * @param invalidations The number of times cached values had been discarded before the field was evaluated.
+     */
+    private synchronized void cacheField(int invalidations, Field<?> field, Object[] value) {
+        if (invalidations != this.invalidations)
+            return;
+        int slot = template.getSlot(field);
+        if (slot == -1)
+            return;
+        ownValues();
+        fieldValues[slot] = value;
+    }
+
+    /**
+     * Evaluates a dynamic field for this struct, using the current thread's reusable eval event.
+     * @param field The dynamic field to evaluate.
+     * @return The value of the field.
+     */
+    private <T> T[] evaluateDynamic(Field<T> field) {
+        TemplateMetrics metrics = template.getMetrics();
+        FieldProfiler profiler = Oopsk.getProfiler();
+        boolean sampled = profiler.shouldSample();
+        long start = sampled || metrics.isEnabled() ? System.nanoTime() : 0;
+        DynamicFieldEvalEvent event = DynamicFieldEvalEvent.reusable();
+        Struct previous = event.setStruct(this);
+        try {
+            return field.defaultValue(event);
+        } finally {
+            event.setStruct(previous);
+            if (start != 0) {
+                long elapsed = System.nanoTime() - start;
+                metrics.recordDynamicEvaluation(elapsed);
+                if (sampled)
+                    profiler.record(template, field, Kind.EVALUATION, null, elapsed);
+            }
+        }
+    }
+
+    /**
+     * Stores a value in a slot, discarding the values of any cached dynamic fields that depend on it.
+     * @param slot The slot to store the value in.
+     * @param value The value to store.
+     */
+    private void store(int slot, Object[] value) {
+        put(slot, value);
+        invalidateDependents(slot);
+    }
+
+    private void invalidateDependents(int slot) {
+        int[] dependents = template.getCachedDependents(slot);
+        if (dependents.length == 0)
+            return;
+        synchronized (this) {
+            invalidations++;
+            ownValues();
+            for (int dependent : dependents)
+                fieldValues[dependent] = null;
+        }
+    }
+
+    /**
+     * Stores a value in a slot, unboxing it if the slot's field is stored unboxed.
+     * @param slot The slot to store the value in.
+     * @param value The value to store. Null or empty for no value.
+     */
+    private void put(int slot, Object[] value) {
+        PrimitiveKind kind = template.getPrimitiveKind(slot);
+        if (kind == null) {
+            ownValues();
+            fieldValues[slot] = value;
+            long[] shared = sharedSlots;
+            if (shared != null)
+                shared[slot >>> 6] &= ~(1L << slot);
+            return;
+        }
+        putPrimitive(slot, kind, value == null || value.length == 0 ? null : value[0]);
+    }
+
+    private void putPrimitive(int slot, PrimitiveKind kind, @Nullable Object element) {
+        long bit = 1L << template.getPrimitiveBit(slot);
+        int word = template.getPrimitiveWord(slot);
+        if (element == null) {
+            present &= ~bit;
+            flags &= ~bit;
+            if (word != -1)
+                primitives[word] = 0;
+            return;
+        }
+        present |= bit;
+        flags = kind.flag(element) ? flags | bit : flags & ~bit;
+        if (word != -1)
+            primitives[word] = kind.word(element);
+    }
+
+    /**
+     * Boxes the value of a field that's stored unboxed.
+     * @param slot The slot of the field.
+     * @return A new array of the field's type, holding the value if there is one.
+     */
+    private Object[] box(int slot) {
+        Field<?> field = template.getField(slot);
+        long bit = 1L << template.getPrimitiveBit(slot);
+        if ((present & bit) == 0)
+            return field.emptyValue();
+        int word = template.getPrimitiveWord(slot);
+        return template.getPrimitiveKind(slot).box(word == -1 ? 0 : primitives[word], (flags & bit) != 0, field.type().getC());
     }
 
     /**
      * Sets the value of a field in this struct.
      * @param field The field to set the value of.
      * @param value The value to set the field to. Null values are replaced with an empty array.
+     *              The array is stored as-is, so it must not be modified afterward.
      */
-    public <T> void setFieldValue(@NotNull Field<T> field, T @Nullable [] value) {
-        if (template.hasField(field.name())) {
-            if (value == null)
-                //noinspection unchecked
-                value = (T[]) Array.newInstance(field.type().getC(), 0);
-            fieldValues.put(field, value);
+    public final <T> void setFieldValue(@NotNull Field<T> field, T @Nullable [] value) {
+        migrateIfRetired();
+        if (value == null || value.length == 0)
+            value = field.emptyValue();
+        if (onMainThread()) {
+            storeField(field, value);
+        } else {
+            storeFieldLocked(field, value);
         }
     }
 
+    private void storeField(Field<?> field, Object[] value) {
+        int slot = template.getSlot(field);
+        if (slot != -1)
+            store(slot, value);
+    }
+
+    private synchronized void storeFieldLocked(Field<?> field, Object[] value) {
+        storeField(field, value);
+    }
+
     /**
      * Sets the value of a field in this struct.
      * @param field The field to set the value of.
      * @param value The value to set the field to. Null values are replaced with an empty array.
      */
-    public <T> void setSingleFieldValue(@NotNull Field<T> field, @Nullable T value) {
-        if (template.hasField(field.name())) {
-            Object[] valueArray = (Object[]) Array.newInstance(field.type().getC(), value == null ? 0 : 1);
-            if (value != null)
-                valueArray[0] = value;
-            fieldValues.put(field, valueArray);
+    public final <T> void setSingleFieldValue(@NotNull Field<T> field, @Nullable T value) {
+        migrateIfRetired();
+        if (onMainThread()) {
+            storeSingle(field, value);
+        } else {
+            storeSingleLocked(field, value);
+        }
+    }
+
+    private synchronized void storeSingleLocked(Field<?> field, @Nullable Object value) {
+        storeSingle(field, value);
+    }
+
+    private void storeSingle(Field<?> field, @Nullable Object value) {
+        int slot = template.getSlot(field);
+        if (slot == -1)
+            return;
+        PrimitiveKind kind = template.getPrimitiveKind(slot);
+        if (kind != null) {
+            // no need for an array if it's stored unboxed
+            putPrimitive(slot, kind, value);
+            invalidateDependents(slot);
+            return;
+        }
+        if (value == null) {
+            store(slot, field.emptyValue());
+            return;
         }
+        Object[] valueArray = (Object[]) Array.newInstance(field.type().getC(), 1);
+        valueArray[0] = value;
+        store(slot, valueArray);
     }
 
 
+    /**
+     * Adds values to the end of a plural field's values.
+     * @param field The field to add to.
+     * @param values The values to add.
+     */
+    public final <T> void addFieldValues(@NotNull Field<T> field, T @NotNull [] values) {
+        T[] fieldValue = getFieldValue(field);
+        if (fieldValue == null)
+            return;
+        T[] newValue = Arrays.copyOf(fieldValue, fieldValue.length + values.length);
+        System.arraycopy(values, 0, newValue, fieldValue.length, values.length);
+        setFieldValue(field, newValue);
+    }
+
+    /**
+     * Removes values from a plural field's values. Values are matched using Skript's comparators.
+     * @param field The field to remove from.
+     * @param values The values to remove.
+     * @param all Whether to remove every value matching one of the given values, or only the first match of each.
+     */
+    public final <T> void removeFieldValues(@NotNull Field<T> field, T @NotNull [] values, boolean all) {
+        T[] fieldValue = getFieldValue(field);
+        if (fieldValue == null)
+            return;
+        List<T> deltaList = new ArrayList<>(Arrays.asList(values));
+        List<T> valuesList = new ArrayList<>(Arrays.asList(fieldValue));
+        for (Iterator<T> fieldIterator = valuesList.iterator(); fieldIterator.hasNext(); ) {
+            T value = fieldIterator.next();
+
+            for (Iterator<T> deltaIterator = deltaList.iterator(); deltaIterator.hasNext(); ) {
+                T removeValue = deltaIterator.next();
+
+                if (Relation.EQUAL.isImpliedBy(Comparators.compare(value, removeValue))) {
+                    fieldIterator.remove();
+                    if (!all) {
+                        // if only removing first, remove this removeValue from delta to prevent it from matching another value
+                        deltaIterator.remove();
+                        break; // No need to check other values, only remove first
+                    }
+                }
+            }
+        }
+        // set the field value to the new list
+        setFieldValue(field, valuesList.toArray(field.emptyValue()));
+    }
+
     /**
      * Resets the value of a field in this struct to its default value.
      * @param field The field to reset the value of.
      * @param event The event to evaluate the default value in.
      */
-    public void resetFieldValue(@NotNull Field<?> field, @Nullable Event event) {
-        if (template.hasField(field.name())) {
-            fieldValues.put(field, field.defaultValue(event));
+    public final void resetFieldValue(@NotNull Field<?> field, @Nullable Event event) {
+        migrateIfRetired();
+        if (template.getSlot(field) == -1)
+            return;
+        // evaluated without holding the lock, as defaults may use other structs
+        Object[] value = field.defaultValue(event);
+        if (onMainThread()) {
+            storeField(field, value);
+        } else {
+            storeFieldLocked(field, value);
         }
     }
 
     /**
      * Updates the fields of this struct to match the given template.
+     * Values are remapped from their slots in the old template to the slots of the matching fields in the new one.
+     * Fields whose type or plurality changed keep their values if they can be converted to the new type.
+     * New fields, and fields whose values could not be converted, are set to their default values.
      * @param newTemplate the new template to update to
      * @return whether the struct was modified in a destructive manner
      */
-    public boolean updateFromTemplate(@NotNull StructTemplate newTemplate) {
-        // remove fields that are not in the new template
-        boolean modified = fieldValues.keySet().removeIf(field -> !newTemplate.hasField(field.name()));
+    public final synchronized boolean updateFromTemplate(@NotNull StructTemplate newTemplate) {
+        // values move to new slots, so they can't be tracked as shared with copies anymore
+        ownAllSlots();
+        // check for fields that are not in the new template
+        boolean modified = false;
+        for (Field<?> oldField : template.getFields()) {
+            if (!newTemplate.hasField(oldField.name())) {
+                modified = true;
+                break;
+            }
+        }
 
         // add new fields from the new template, modify existing fields if necessary
-        for (Field<?> newField : newTemplate.getFields()) {
-            String name = newField.name();
+        Object[][] newValues = new Object[newTemplate.getFieldCount()][];
+        for (int slot = 0; slot < newValues.length; slot++) {
+            Field<?> newField = newTemplate.getField(slot);
             // check for existing field to modify
-            if (this.template.hasField(name)) {
-                Field<?> oldField = this.template.getField(name);
-                // if they match, copy the value, replace the field reference
-                if (oldField.equals(newField)) {
-                    fieldValues.put(newField, fieldValues.remove(oldField));
-                } else {
-                    // if they don't match, remove the old field and add the new one
-                    fieldValues.remove(oldField);
-                    fieldValues.put(newField, newField.defaultValue(ContextlessEvent.get()));
+            Field<?> oldField = this.template.getField(newField.name());
+            // cached dynamic values may be outdated, so they are dropped
+            if (newField.dynamic()) {
+                if (oldField != null && !oldField.dynamic())
+                    modified = true;
+                continue;
+            }
+            Object[] oldValue = oldField == null || oldField.dynamic() ? null : getStoredValue(this.template.getSlot(oldField));
+            if (oldField != null && oldField.equals(newField)) {
+                // if they match, copy the value into the new slot
+                newValues[slot] = oldValue;
+                continue;
+            }
+            // if the field was retyped, try to convert the old value
+            if (oldValue != null && oldValue.length > 0) {
+                Object[] converted = Converters.convert(oldValue, newField.type().getC());
+                if (newField.single() && converted.length > 1)
+                    converted = Arrays.copyOf(converted, 1);
+                if (converted.length != oldValue.length)
                     modified = true;
+                if (converted.length > 0) {
+                    newValues[slot] = converted;
+                    continue;
                 }
-            } else {
-                // new field, add it
-                fieldValues.put(newField, newField.defaultValue(ContextlessEvent.get()));
             }
+            // otherwise, or if the field is new, use the new default
+            newValues[slot] = newField.defaultValue(ContextlessEvent.get());
         }
+        // cached values are dropped, along with any being evaluated for the old template
+        invalidations++;
         this.template = newTemplate;
+        this.fieldValues = newValues;
+        unpackPrimitives();
         return modified;
     }
 
-    @Override
-    public int hashCode() {
-        return Objects.hash(template, fieldValues);
+    /**
+     * Compares the field values of this struct to another struct's.
+     * Unlike {@link #equals(Object)}, which is identity-based, this is true for distinct structs of the same template
+     * whose non-dynamic fields hold equal values. Nested structs are compared by identity.
+     *
+     * @param other The struct to compare to.
+     * @return Whether both structs share a template and have equal field values.
+     */
+    public final boolean valueEquals(@Nullable Struct other) {
+        if (this == other)
+            return true;
+        if (other == null || getTemplate() != other.getTemplate())
+            return false;
+        if (present != other.present || flags != other.flags || !Arrays.equals(primitives, other.primitives))
+            return false;
+        for (int slot = 0; slot < fieldValues.length; slot++) {
+            if (template.getField(slot).dynamic())
+                continue;
+            if (!Arrays.equals(fieldValues[slot], other.fieldValues[slot]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Computes a hash of this struct's template and field values, consistent with {@link #valueEquals(Struct)}.
+     * This changes whenever a field is changed, so it must not be used to store structs in hash-based collections.
+     *
+     * @return The value-based hash code of this struct.
+     */
+    public final int valueHashCode() {
+        int hash = getTemplate().hashCode();
+        hash = 31 * hash + Long.hashCode(present);
+        hash = 31 * hash + Long.hashCode(flags);
+        hash = 31 * hash + Arrays.hashCode(primitives);
+        for (int slot = 0; slot < fieldValues.length; slot++) {
+            if (!template.getField(slot).dynamic())
+                hash = 31 * hash + Arrays.hashCode(fieldValues[slot]);
+        }
+        return hash;
+    }
+
+    /**
+     * Gets the stored value of a slot, without migrating the struct or evaluating dynamic fields.
+     * @param slot The slot to get the value of.
+     * @return The stored value, or null for dynamic fields. Values stored unboxed are boxed into a new array.
+     */
+    final Object[] getStoredValue(int slot) {
+        if (template.getPrimitiveKind(slot) != null)
+            return box(slot);
+        return fieldValues[slot];
+    }
+
+    /**
+     * Copies the stored values of every slot, along with the template whose slots they're in. The copy is taken under
+     * this struct's lock, so it's consistent even while the main thread updates the struct to a reloaded template.
+     * @return The template and the stored values, see {@link #getStoredValue(int)}.
+     */
+    final synchronized StoredValues getStoredValues() {
+        Object[][] values = new Object[fieldValues.length][];
+        for (int slot = 0; slot < values.length; slot++)
+            values[slot] = getStoredValue(slot);
+        return new StoredValues(template, values);
+    }
+
+    /**
+     * The stored values of a struct, by the slots of the template they're laid out for.
+     */
+    record StoredValues(StructTemplate template, Object[][] values) {}
+
+    /**
+     * @param slot The slot of a field stored unboxed.
+     * @return Whether the field has a value.
+     */
+    final boolean hasPrimitive(int slot) {
+        return (present & (1L << template.getPrimitiveBit(slot))) != 0;
+    }
+
+    /**
+     * @param slot The slot of a field stored unboxed.
+     * @return The word of the field's value, as encoded by its {@link PrimitiveKind}, or 0 for booleans and unset fields.
+     */
+    final long getPrimitiveWord(int slot) {
+        int word = template.getPrimitiveWord(slot);
+        return word == -1 ? 0 : primitives[word];
+    }
+
+    /**
+     * @param slot The slot of a field stored unboxed.
+     * @return The flag of the field's value, as encoded by its {@link PrimitiveKind}.
+     */
+    final boolean getPrimitiveFlag(int slot) {
+        return (flags & (1L << template.getPrimitiveBit(slot))) != 0;
+    }
+
+    /**
+     * Sets the value of a field stored unboxed, already encoded by its {@link PrimitiveKind}.
+     * Does not discard cached dynamic values, so this is only for filling in newly restored structs.
+     * @param slot The slot of the field.
+     * @param word The word of the value. Ignored for booleans.
+     * @param flag The flag of the value.
+     */
+    final void setPrimitive(int slot, long word, boolean flag) {
+        long bit = 1L << template.getPrimitiveBit(slot);
+        present |= bit;
+        flags = flag ? flags | bit : flags & ~bit;
+        int index = template.getPrimitiveWord(slot);
+        if (index != -1)
+            primitives[index] = word;
+    }
+
+    /**
+     * @return Whether this struct's template has been removed and it has not yet been updated to a newer one.
+     *         Unlike {@link #getTemplate()}, this does not update the struct.
+     */
+    final boolean isMigrationPending() {
+        return template.isMigratable();
+    }
+
+    /**
+     * Estimates the heap retained by this struct, in bytes, assuming compressed references.
+     * Counts the struct itself, its value arrays and primitive values, and any boxed primitives and strings stored in them.
+     * Other values may be shared with the rest of the server, so only their references are counted.
+     * Safe to call from any thread, though concurrent changes may not be reflected.
+     *
+     * @return The estimated retained size.
+     */
+    final long estimateRetainedSize() {
+        Object[][] values = fieldValues;
+        long[] primitives = this.primitives;
+        // struct header and fields, then the slot array
+        long size = 40 + 16 + 4L * values.length;
+        if (primitives.length > 0)
+            size += 16 + 8L * primitives.length;
+        for (Object[] value : values) {
+            if (value == null)
+                continue;
+            size += 16 + 4L * value.length;
+            for (Object element : value) {
+                if (element instanceof String string) {
+                    size += 24 + 16 + string.length();
+                } else if (element instanceof Number || element instanceof Boolean || element instanceof Character) {
+                    size += 16;
+                }
+            }
+        }
+        return size;
     }
 
     @Override
@@ -0,0 +1,115 @@
+package com.sovdee.oopsk.core;
+
+import ch.njol.skript.lang.Expression;
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+
+/**
+ * Creates instances of a struct class. The constructors are resolved once, when the factory is built,
+ * so creating a struct is just an allocation and a constructor call rather than a reflective lookup.
+ * Each {@link StructTemplate} owns a factory for its custom class.
+ */
+final class StructFactory {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Class<? extends Struct> structClass;
+    private final MethodHandle templateConstructor;
+    private final MethodHandle copyConstructor;
+    private final MethodHandle snapshotConstructor;
+    private final MethodHandle initialValuesConstructor;
+    private final MethodHandle restoreConstructor;
+
+    /**
+     * Resolves the constructors of the given struct class.
+     *
+     * @param structClass The class to create instances of.
+     */
+    StructFactory(@NotNull Class<? extends Struct> structClass) {
+        this.structClass = structClass;
+        try {
+            templateConstructor = findConstructor(StructTemplate.class, Event.class);
+            copyConstructor = findConstructor(Struct.class);
+            snapshotConstructor = findConstructor(Struct.class, boolean.class);
+            initialValuesConstructor = findConstructor(StructTemplate.class, Event.class, Map.class);
+            restoreConstructor = findConstructor(StructTemplate.class, Object[][].class);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to resolve constructors of struct class " + structClass.getName(), e);
+        }
+    }
+
+    private MethodHandle findConstructor(Class<?>... parameterTypes) throws ReflectiveOperationException {
+        return LOOKUP.findConstructor(structClass, MethodType.methodType(void.class, parameterTypes))
+                .asType(MethodType.methodType(Struct.class, parameterTypes));
+    }
+
+    /**
+     * @see Struct#newInstance(StructTemplate, Event)
+     */
+    Struct create(@NotNull StructTemplate template, @Nullable Event event) {
+        try {
+            return (Struct) templateConstructor.invokeExact(template, event);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * @see Struct#newInstance(Struct)
+     */
+    Struct copy(@NotNull Struct source) {
+        try {
+            return (Struct) copyConstructor.invokeExact(source);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * @see Struct#newSnapshot(Struct)
+     */
+    Struct snapshot(@NotNull Struct source) {
+        try {
+            return (Struct) snapshotConstructor.invokeExact(source, true);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * @see Struct#newInstance(StructTemplate, Event, Map)
+     */
+    Struct create(@NotNull StructTemplate template, @Nullable Event event, @Nullable Map<String, Expression<?>> initialValues) {
+        try {
+            return (Struct) initialValuesConstructor.invokeExact(template, event, initialValues);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * Creates a struct with the given values, without evaluating defaults.
+     */
+    Struct restore(@NotNull StructTemplate template, Object[] @NotNull [] fieldValues) {
+        try {
+            return (Struct) restoreConstructor.invokeExact(template, fieldValues);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    private RuntimeException failure(Throwable e) {
+        if (e instanceof RuntimeException runtimeException)
+            return runtimeException;
+        if (e instanceof Error error)
+            throw error;
+        return new RuntimeException("Failed to create new instance of struct class " + structClass.getName(), e);
+    }
+
+}
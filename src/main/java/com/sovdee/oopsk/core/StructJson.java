@@ -0,0 +1,374 @@
+package com.sovdee.oopsk.core;
+
+import ch.njol.skript.classes.ClassInfo;
+import ch.njol.skript.lang.ParseContext;
+import ch.njol.skript.lang.util.ContextlessEvent;
+import ch.njol.skript.registrations.Classes;
+import ch.njol.skript.variables.SerializedVariable;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.sovdee.oopsk.Oopsk;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.lang.converter.Converters;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Converts structs to and from JSON, one token at a time, so exports of any size only hold one struct in memory.
+ * <br>
+ * A struct is written as an object. Its first property is {@code "template"}, the template name, followed by one
+ * property per field, in slot order. Single fields are written as a value, or null when unset, and plural fields as an array.
+ * Numbers, booleans and texts are written as JSON values, and nested structs as nested objects. Everything else is
+ * written as an object of its {@code "type"}, its Skript string as {@code "value"}, and its serialized form, the same
+ * as for variables, as base64 {@code "data"}. Skript strings don't always parse back to the same value, like locations
+ * in worlds or items with metadata, but the data does. Values that can't be saved, like entities, can't be written.
+ * Dynamic fields are not written.
+ * <br>
+ * Reading expects {@code "template"} to be the first property of a struct, and {@code "type"} the first property of
+ * other objects. Objects without data are parsed from their value, and strings in fields of other types are parsed
+ * with Skript's parsers. Values that can't be read are errors. Fields the template doesn't have are skipped, and
+ * missing fields get their default value.
+ */
+public final class StructJson {
+
+    private static final String TEMPLATE = "template";
+    private static final String TYPE = "type";
+    private static final String VALUE = "value";
+    private static final String DATA = "data";
+
+    private StructJson() {}
+
+    /**
+     * @param struct The struct to convert.
+     * @return The struct as a JSON string.
+     * @throws IllegalArgumentException if the struct holds values that can't be saved.
+     */
+    public static @NotNull String toJson(@NotNull Struct struct) {
+        StringWriter string = new StringWriter();
+        try (JsonWriter out = new JsonWriter(string)) {
+            write(out, struct);
+        } catch (IOException e) {
+            // StringWriter doesn't throw, so this is a value that can't be written
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        return string.toString();
+    }
+
+    /**
+     * @param json A struct as a JSON string.
+     * @return The struct, or null if the JSON is null.
+     * @throws IOException if the JSON is malformed or is not a struct of a loaded template.
+     */
+    public static @Nullable Struct fromJson(@NotNull String json) throws IOException {
+        try (JsonReader in = new JsonReader(new StringReader(json))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Writes structs to a channel as a JSON array. The channel is not closed.
+     *
+     * @param structs The structs to write. Only one struct needs to be in memory at a time.
+     * @param channel The channel to write to.
+     * @return The number of structs written.
+     */
+    public static int writeAll(@NotNull Iterator<? extends Struct> structs, @NotNull WritableByteChannel channel) throws IOException {
+        Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+        JsonWriter out = new JsonWriter(writer);
+        int count = 0;
+        out.beginArray();
+        while (structs.hasNext()) {
+            write(out, structs.next());
+            count++;
+        }
+        out.endArray();
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Writes the contents of a struct store to a channel as a JSON object of keys to structs. The channel is not closed.
+     * The store is locked while it's written, and only one of its structs is in memory at a time.
+     *
+     * @param store   The store to write.
+     * @param channel The channel to write to.
+     * @return The number of structs written.
+     * @see StructStore#forEach(StructStore.StoredStructAction)
+     */
+    public static int writeAll(@NotNull StructStore store, @NotNull WritableByteChannel channel) throws IOException {
+        Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+        JsonWriter out = new JsonWriter(writer);
+        out.beginObject();
+        int count = store.forEach((key, struct) -> {
+            out.name(key);
+            write(out, struct);
+        });
+        out.endObject();
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Reads a JSON array of structs from a channel, passing each struct on as soon as it's read. The channel is not closed.
+     *
+     * @param channel The channel to read from.
+     * @param action  What to do with each struct.
+     * @return The number of structs read.
+     * @throws IOException if the JSON is malformed or contains structs of templates that aren't loaded.
+     */
+    public static int readAll(@NotNull ReadableByteChannel channel, @NotNull Consumer<Struct> action) throws IOException {
+        Reader reader = Channels.newReader(channel, StandardCharsets.UTF_8);
+        JsonReader in = new JsonReader(reader);
+        int count = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            Struct struct = read(in);
+            if (struct == null)
+                continue;
+            action.accept(struct);
+            count++;
+        }
+        in.endArray();
+        return count;
+    }
+
+    /**
+     * Writes a struct as a JSON object.
+     *
+     * @param out    The writer to write to.
+     * @param struct The struct to write.
+     */
+    public static void write(@NotNull JsonWriter out, @NotNull Struct struct) throws IOException {
+        write(out, struct, Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private static void write(JsonWriter out, Struct struct, Set<Struct> parents) throws IOException {
+        struct.migrateIfRetired();
+        parents.add(struct);
+        Struct.StoredValues stored = struct.getStoredValues();
+        StructTemplate template = stored.template();
+        out.beginObject();
+        out.name(TEMPLATE).value(template.getName());
+        for (int slot = 0; slot < template.getFieldCount(); slot++) {
+            Field<?> field = template.getField(slot);
+            if (field.dynamic())
+                continue;
+            Object[] values = stored.values()[slot];
+            out.name(field.name());
+            if (field.single()) {
+                writeValue(out, values == null || values.length == 0 ? null : values[0], parents);
+            } else {
+                out.beginArray();
+                if (values != null) {
+                    for (Object value : values)
+                        writeValue(out, value, parents);
+                }
+                out.endArray();
+            }
+        }
+        out.endObject();
+        parents.remove(struct);
+    }
+
+    private static void writeValue(JsonWriter out, @Nullable Object value, Set<Struct> parents) throws IOException {
+        if (value == null || (value instanceof Double decimal && !Double.isFinite(decimal))
+                || (value instanceof Float floating && !Float.isFinite(floating))) {
+            out.nullValue();
+        } else if (value instanceof Number number) {
+            out.value(number);
+        } else if (value instanceof Boolean bool) {
+            out.value(bool);
+        } else if (value instanceof String string) {
+            out.value(string);
+        } else if (value instanceof Struct nested) {
+            // structs that contain themselves are written as null
+            if (parents.contains(nested)) {
+                out.nullValue();
+            } else {
+                write(out, nested, parents);
+            }
+        } else {
+            SerializedVariable.Value serialized = Classes.serialize(value);
+            if (serialized == null)
+                throw new IOException("Cannot write " + Classes.toString(value) + " as JSON, as values of its type can't be saved.");
+            out.beginObject();
+            out.name(TYPE).value(serialized.type);
+            out.name(VALUE).value(Classes.toString(value));
+            out.name(DATA).value(Base64.getEncoder().encodeToString(serialized.data));
+            out.endObject();
+        }
+    }
+
+    /**
+     * Reads a struct from a JSON object. The struct is registered like any newly created struct.
+     *
+     * @param in The reader to read from.
+     * @return The struct, or null if the next value is null.
+     * @throws IOException if the JSON is malformed or the struct's template isn't loaded.
+     */
+    public static @Nullable Struct read(@NotNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        try {
+            in.beginObject();
+            if (!in.nextName().equals(TEMPLATE))
+                throw new IOException("The first property of a struct must be '" + TEMPLATE + "' at " + in.getPath());
+            return readStruct(in);
+        } catch (IllegalStateException e) {
+            // thrown by the reader for unexpected tokens
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the rest of a struct object, once its {@code "template"} property name has been read.
+     */
+    private static Struct readStruct(JsonReader in) throws IOException {
+        String name = in.nextString();
+        StructTemplate template = Oopsk.getTemplateManager().getTemplate(name);
+        if (template == null)
+            throw new IOException("A struct by the name of '" + name + "' does not exist.");
+
+        Object[][] fieldValues = new Object[template.getFieldCount()][];
+        while (in.hasNext()) {
+            Field<?> field = template.getField(in.nextName());
+            if (field == null || field.dynamic()) {
+                in.skipValue();
+                continue;
+            }
+            fieldValues[template.getSlot(field)] = readValues(in, field);
+        }
+        in.endObject();
+
+        for (int slot = 0; slot < fieldValues.length; slot++) {
+            Field<?> field = template.getField(slot);
+            if (fieldValues[slot] == null && !field.dynamic())
+                fieldValues[slot] = field.defaultValue(ContextlessEvent.get());
+        }
+        Struct struct = template.getFactory().restore(template, fieldValues);
+        template.getMetrics().recordCreation();
+        Oopsk.getStructManager().registerStruct(struct, template);
+        return struct;
+    }
+
+    /**
+     * Reads the rest of a value written as an object, once its {@code "type"} property name has been read.
+     */
+    private static Object readSerialized(JsonReader in) throws IOException {
+        String type = in.nextString();
+        String value = null;
+        String data = null;
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case VALUE -> value = in.nextString();
+                case DATA -> data = in.nextString();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+
+        Object deserialized = null;
+        if (data != null) {
+            byte[] bytes;
+            try {
+                bytes = Base64.getDecoder().decode(data);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid " + type + " data at " + in.getPath(), e);
+            }
+            deserialized = Classes.deserialize(type, bytes);
+        } else if (value != null) {
+            ClassInfo<?> classInfo = Classes.getClassInfoNoError(type);
+            if (classInfo != null)
+                deserialized = Classes.parse(value, classInfo.getC(), ParseContext.DEFAULT);
+        }
+        if (deserialized == null)
+            throw new IOException("Could not read " + type + (value == null ? "" : " '" + value + "'") + " at " + in.getPath());
+        return deserialized;
+    }
+
+    private static Object[] readValues(JsonReader in, Field<?> field) throws IOException {
+        Class<?> type = field.type().getC();
+        List<Object> values = new ArrayList<>(1);
+        if (in.peek() == JsonToken.BEGIN_ARRAY) {
+            in.beginArray();
+            while (in.hasNext())
+                addValue(values, readValue(in, type), field);
+            in.endArray();
+        } else {
+            addValue(values, readValue(in, type), field);
+        }
+        return values.toArray(field.emptyValue());
+    }
+
+    private static void addValue(List<Object> values, @Nullable Object value, Field<?> field) {
+        if (value != null && (!field.single() || values.isEmpty()))
+            values.add(value);
+    }
+
+    private static @Nullable Object readValue(JsonReader in, Class<?> type) throws IOException {
+        Object value = switch (in.peek()) {
+            case NULL -> {
+                in.nextNull();
+                yield null;
+            }
+            case BOOLEAN -> in.nextBoolean();
+            case NUMBER -> {
+                String number = in.nextString();
+                try {
+                    yield Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    yield Double.parseDouble(number);
+                }
+            }
+            case STRING -> {
+                String string = in.nextString();
+                if (type.isAssignableFrom(String.class))
+                    yield string;
+                Object parsed = Classes.parse(string, type, ParseContext.DEFAULT);
+                if (parsed == null)
+                    throw new IOException("Could not parse '" + string + "' as " + Classes.getSuperClassInfo(type).getName().withIndefiniteArticle() + " at " + in.getPath());
+                yield parsed;
+            }
+            case BEGIN_OBJECT -> {
+                in.beginObject();
+                String first = in.nextName();
+                if (first.equals(TEMPLATE))
+                    yield readStruct(in);
+                if (first.equals(TYPE))
+                    yield readSerialized(in);
+                throw new IOException("The first property of an object must be '" + TEMPLATE + "' or '" + TYPE + "' at " + in.getPath());
+            }
+            default -> {
+                in.skipValue();
+                yield null;
+            }
+        };
+        if (value == null || type.isInstance(value))
+            return value;
+        Object converted = Converters.convert(value, type);
+        if (converted == null)
+            throw new IOException(Classes.toString(value) + " is not " + Classes.getSuperClassInfo(type).getName().withIndefiniteArticle() + " at " + in.getPath());
+        return converted;
+    }
+
+}
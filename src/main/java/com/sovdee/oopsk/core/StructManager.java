@@ -6,20 +6,29 @@ import org.bukkit.event.Event;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * StructManager is responsible for managing the lifecycle of structs.
  * All struct creation and deletion should be done through this class, though it's rare for any structs to be manually deleted.
+ * Structs may be created and deleted from any thread. Orphaning and reparenting happen when scripts are (re)loaded.
  */
 public class StructManager {
 
-    private final Map<StructTemplate, Set<Struct>> activeStructs = new HashMap<>();
-    private final Map<String, Set<Struct>> orphanedStructs = new HashMap<>();
+    /**
+     * The most structs that can be created at once with {@link #createStructs(StructTemplate, Event, int)}.
+     * The count often comes from script input, and the structs are created and registered in one go.
+     */
+    public static final int MAX_BULK_CREATION = 100_000;
+
+    private final Map<StructTemplate, StructRegistry> activeStructs = new ConcurrentHashMap<>();
+    private final Map<String, StructRegistry> orphanedStructs = new ConcurrentHashMap<>();
+    private volatile long migrationBudget;
 
     /**
      * Creates a new struct with the given template and event.
@@ -38,27 +47,139 @@ public class StructManager {
      * @param template The template to create the struct from.
      * @param event    The event to evaluate the default values in.
      * @param initialValues The initial values to set in the struct. This is a map of field names to expressions.
-     * @return The created struct.
+     * @return The created struct. It is only registered if the template {@link StructTemplate#isTracked() is tracked}.
      */
     public Struct createStruct(StructTemplate template, @Nullable Event event, @Nullable Map<String, Expression<?>> initialValues) {
-        Struct struct = Struct.newInstance(template, event, initialValues);
-        activeStructs.computeIfAbsent(template, k -> Collections.newSetFromMap(new WeakHashMap<>())).add(struct);
+        return track(Struct.newInstance(template, event, initialValues), template);
+    }
+
+    /**
+     * Creates a new struct following a precompiled construction plan.
+     *
+     * @param plan  The plan to follow.
+     * @param event The event to evaluate the default and initial values in.
+     * @return The created struct. It is only registered if the plan's template {@link StructTemplate#isTracked() is tracked}.
+     * @see #createStruct(StructTemplate, Event, Map)
+     */
+    public Struct createStruct(@NotNull ConstructionPlan plan, @Nullable Event event) {
+        return track(plan.create(event), plan.getTemplate());
+    }
+
+    /**
+     * Creates several new structs with the given template and event.
+     * Defaults that are the same for every struct are evaluated once, and the structs are registered in one batch.
+     *
+     * @param template The template to create the structs from.
+     * @param event    The event to evaluate the default values in.
+     * @param count    The number of structs to create.
+     * @return The created structs. They are only registered if the template {@link StructTemplate#isTracked() is tracked}.
+     * @throws IllegalArgumentException if the count is above {@link #MAX_BULK_CREATION}.
+     */
+    public Struct[] createStructs(@NotNull StructTemplate template, @Nullable Event event, int count) {
+        if (count <= 0)
+            return new Struct[0];
+        if (count > MAX_BULK_CREATION)
+            throw new IllegalArgumentException("Cannot create more than " + MAX_BULK_CREATION + " structs at once, got " + count);
+        int fieldCount = template.getFieldCount();
+        Object[][] sharedDefaults = new Object[fieldCount][];
+        for (int slot = 0; slot < fieldCount; slot++) {
+            Field<?> field = template.getField(slot);
+            if (!field.dynamic())
+                sharedDefaults[slot] = field.sharedDefault();
+        }
+
+        StructFactory factory = template.getFactory();
+        Struct[] structs = new Struct[count];
+        for (int i = 0; i < count; i++) {
+            Object[][] values = new Object[fieldCount][];
+            for (int slot = 0; slot < fieldCount; slot++) {
+                Object[] shared = sharedDefaults[slot];
+                if (shared != null) {
+                    values[slot] = shared;
+                } else {
+                    Field<?> field = template.getField(slot);
+                    // dynamic fields are evaluated on access
+                    if (!field.dynamic())
+                        values[slot] = field.defaultValue(event);
+                }
+            }
+            structs[i] = factory.restore(template, values);
+        }
+
+        template.getMetrics().recordCreations(count);
+        if (!template.isTracked())
+            return structs;
+        registerActive(template, registry -> registry.addAll(structs));
+        return structs;
+    }
+
+    private Struct track(Struct struct, StructTemplate template) {
+        template.getMetrics().recordCreation();
+        if (!template.isTracked())
+            return struct;
+        registerActive(template, registry -> registry.add(struct));
         return struct;
     }
 
+    /**
+     * Adds structs to the registry of an active template.
+     * If the template is removed on another thread at the same time, the structs end up with its orphans either way.
+     *
+     * @param template The template of the structs.
+     * @param adder    Adds the structs to the registry.
+     */
+    private void registerActive(StructTemplate template, Consumer<StructRegistry> adder) {
+        // adding inside compute means the registry can't be orphaned between looking it up and adding to it
+        addTo(activeStructs, template, adder);
+        // a template is retired before its structs are orphaned, so if it was retired after the add, its orphaning
+        // moved these structs as well, and if it was retired before, the structs are orphaned here
+        if (template.isRetired())
+            orphanStructs(template);
+    }
+
+    /**
+     * Adds structs to a registry of a map, creating the registry if needed. The registry can't be removed from the map
+     * while the structs are added to it.
+     */
+    private static <K> void addTo(Map<K, StructRegistry> registries, K key, Consumer<StructRegistry> adder) {
+        registries.compute(key, (k, registry) -> {
+            if (registry == null)
+                registry = new StructRegistry();
+            adder.accept(registry);
+            return registry;
+        });
+    }
+
+    /**
+     * Registers a struct that was not created through this manager, such as one loaded from a variable.
+     * If the struct's template has been removed, the struct is registered with the loaded template of the same name,
+     * without updating it, or as an orphan if there is none.
+     *
+     * @param struct   The struct to register.
+     * @param template The template the struct was created with.
+     */
+    void registerStruct(@NotNull Struct struct, @NotNull StructTemplate template) {
+        if (!template.isTracked())
+            return;
+        StructTemplate current = template.isRetired() ? Oopsk.getTemplateManager().getTemplate(template.getName()) : template;
+        if (current == null) {
+            // if a template of this name is loaded after this point, the struct is still updated when it's next used
+            addTo(orphanedStructs, template.getName(), registry -> registry.add(struct));
+            return;
+        }
+        registerActive(current, registry -> registry.add(struct));
+    }
+
     /**
      * Deletes a struct from the active structs list.
      *
      * @param struct The struct to delete.
      */
     public void deleteStruct(@NotNull Struct struct) {
-        Set<Struct> structs = activeStructs.get(struct.getTemplate());
-        if (structs != null) {
+        StructRegistry structs = activeStructs.get(struct.getTemplate());
+        // empty registries are kept, as removing them could race with registrations on other threads
+        if (structs != null)
             structs.remove(struct);
-            if (structs.isEmpty()) {
-                activeStructs.remove(struct.getTemplate());
-            }
-        }
     }
 
     /**
@@ -67,30 +188,142 @@ public class StructManager {
      * @param template The template to orphan the structs of.
      */
     public void orphanStructs(StructTemplate template) {
-        Set<Struct> structs = activeStructs.remove(template);
-        if (structs != null) {
-            orphanedStructs.computeIfAbsent(template.getName(), k -> Collections.newSetFromMap(new WeakHashMap<>())).addAll(structs);
-        }
+        StructRegistry structs = activeStructs.remove(template);
+        if (structs != null)
+            addTo(orphanedStructs, template.getName(), registry -> registry.addAll(structs));
     }
 
     /**
      * Reparents the structs of the given template. This should be called when a template is added.
      * Matches are made by template name, so if a template with the same name is added, the structs will be reparented to the new template.
+     * The structs themselves are updated to the new template lazily, the first time they're accessed.
+     * If a migration budget is set, they are also updated in the background, a few per tick.
      *
      * @param template The template to reparent the structs of.
+     * @see #setMigrationBudget(long)
      */
     public void reparentStructs(@NotNull StructTemplate template) {
-        Set<Struct> structs = orphanedStructs.remove(template.getName());
+        StructRegistry structs = orphanedStructs.remove(template.getName());
         if (structs == null)
             return;
-        boolean modified = false;
-        for (Struct struct : structs) {
-            modified |= struct.updateFromTemplate(template);
+        registerActive(template, registry -> registry.addAll(structs));
+        if (migrationBudget > 0 && Oopsk.getInstance() != null && !structs.isEmpty())
+            new MigrationTask(template, structs, migrationBudget).runTaskTimer(Oopsk.getInstance(), 1, 1);
+    }
+
+    /**
+     * Counts the tracked structs of each active template.
+     *
+     * @return The number of live structs, by template name.
+     */
+    public Map<String, Integer> getActiveCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<StructTemplate, StructRegistry> entry : activeStructs.entrySet())
+            counts.merge(entry.getKey().getName(), entry.getValue().size(), Integer::sum);
+        return counts;
+    }
+
+    /**
+     * Counts the structs whose templates have been removed and not yet reloaded.
+     *
+     * @return The number of orphaned structs, by template name.
+     */
+    public Map<String, Integer> getOrphanedCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<String, StructRegistry> entry : orphanedStructs.entrySet())
+            counts.put(entry.getKey(), entry.getValue().size());
+        return counts;
+    }
+
+    /**
+     * Estimates the heap retained by all tracked structs of a template name, including orphaned ones.
+     * This walks every struct of the template, so it should not be called frequently.
+     *
+     * @param name The name of the template.
+     * @return The estimated size in bytes.
+     * @see Struct#estimateRetainedSize()
+     */
+    public long estimateRetainedBytes(String name) {
+        long size = 0;
+        for (StructRegistry structs : getRegistries(name)) {
+            for (Struct struct : structs)
+                size += struct.estimateRetainedSize();
+        }
+        return size;
+    }
+
+    /**
+     * Counts the tracked structs of a template name that still need to be updated to a reloaded template.
+     * This walks every struct of the template, so it should not be called frequently.
+     *
+     * @param name The name of the template.
+     * @return The number of structs whose template has been removed, including orphaned ones.
+     */
+    public int countPendingMigrations(String name) {
+        int count = 0;
+        for (StructRegistry structs : getRegistries(name)) {
+            for (Struct struct : structs) {
+                if (struct.isMigrationPending())
+                    count++;
+            }
         }
-        if (modified)
-            Oopsk.warning("Existing structs of template '" + template.getName() + "' have had their fields modified to match the new template. This may have caused data loss.");
-        activeStructs.computeIfAbsent(template, k -> Collections.newSetFromMap(new WeakHashMap<>())).addAll(structs);
+        return count;
+    }
+
+    private List<StructRegistry> getRegistries(String name) {
+        List<StructRegistry> registries = new ArrayList<>();
+        for (Map.Entry<StructTemplate, StructRegistry> entry : activeStructs.entrySet()) {
+            if (entry.getKey().getName().equals(name))
+                registries.add(entry.getValue());
+        }
+        StructRegistry orphans = orphanedStructs.get(name);
+        if (orphans != null)
+            registries.add(orphans);
+        return registries;
+    }
 
+    /**
+     * Stops tracking the orphaned structs of a template name. The structs themselves are not affected and will still
+     * be updated if they're used after a template of the same name is loaded again.
+     *
+     * @param name The name of the template.
+     * @return The number of structs that are no longer tracked.
+     */
+    public int clearOrphans(String name) {
+        StructRegistry structs = orphanedStructs.remove(name);
+        return structs == null ? 0 : structs.size();
+    }
+
+    /**
+     * Stops tracking all orphaned structs.
+     *
+     * @return The number of structs that are no longer tracked.
+     * @see #clearOrphans(String)
+     */
+    public int clearOrphans() {
+        int cleared = 0;
+        for (String name : orphanedStructs.keySet())
+            cleared += clearOrphans(name);
+        return cleared;
+    }
+
+    /**
+     * Removes the entries of garbage collected structs from all registries.
+     * This normally happens on its own as structs are registered or removed.
+     */
+    public void expungeCollected() {
+        activeStructs.values().forEach(StructRegistry::expunge);
+        orphanedStructs.values().forEach(StructRegistry::expunge);
+    }
+
+    /**
+     * Sets how much time may be spent each tick updating the structs of reloaded templates in the background.
+     *
+     * @param nanosPerTick The time budget per tick, in nanoseconds. 0 or less disables background updates,
+     *                     leaving structs to be updated only when they're next accessed.
+     */
+    public void setMigrationBudget(long nanosPerTick) {
+        this.migrationBudget = nanosPerTick;
     }
 
 }
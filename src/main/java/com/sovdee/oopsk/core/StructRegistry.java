@@ -0,0 +1,163 @@
+package com.sovdee.oopsk.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A set of structs held by weak references and compared by identity.
+ * Membership never depends on a struct's field values, so structs can be mutated freely while registered.
+ * Entries of structs that have been garbage collected are expunged via a reference queue on each modification.
+ * Registries are safe to use from multiple threads without external locking.
+ */
+public class StructRegistry implements Iterable<Struct> {
+
+    private final ReferenceQueue<Struct> queue = new ReferenceQueue<>();
+    private final Set<Entry> entries = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Adds a struct to this registry.
+     *
+     * @param struct The struct to add.
+     * @return True if the struct was not already registered.
+     */
+    public boolean add(@NotNull Struct struct) {
+        expunge();
+        return entries.add(new Entry(struct, queue));
+    }
+
+    /**
+     * Adds all live structs of another registry to this one.
+     *
+     * @param other The registry to add the structs of.
+     */
+    public void addAll(@NotNull StructRegistry other) {
+        expunge();
+        for (Struct struct : other)
+            entries.add(new Entry(struct, queue));
+    }
+
+    /**
+     * Adds structs to this registry, expunging collected entries once for the whole batch.
+     *
+     * @param structs The structs to add.
+     */
+    public void addAll(@NotNull Struct @NotNull [] structs) {
+        expunge();
+        for (Struct struct : structs)
+            entries.add(new Entry(struct, queue));
+    }
+
+    /**
+     * Removes a struct from this registry.
+     *
+     * @param struct The struct to remove.
+     * @return True if the struct was registered.
+     */
+    public boolean remove(@NotNull Struct struct) {
+        expunge();
+        return entries.remove(new Entry(struct, null));
+    }
+
+    /**
+     * @param struct The struct to check.
+     * @return Whether the struct is registered.
+     */
+    public boolean contains(@NotNull Struct struct) {
+        return entries.contains(new Entry(struct, null));
+    }
+
+    /**
+     * @return The number of registered structs. May include structs that were collected but not yet expunged.
+     */
+    public int size() {
+        expunge();
+        return entries.size();
+    }
+
+    /**
+     * @return Whether no structs are registered.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes the entries of all structs that have been garbage collected.
+     */
+    public void expunge() {
+        Reference<? extends Struct> reference;
+        while ((reference = queue.poll()) != null) {
+            //noinspection SuspiciousMethodCalls
+            entries.remove(reference);
+        }
+    }
+
+    /**
+     * Iterates lazily over the live structs in this registry, skipping entries whose structs have been collected.
+     * Only the next struct is held strongly, so structs that aren't reached yet can still be garbage collected.
+     * Iteration is weakly consistent: structs added or removed during iteration may or may not be seen.
+     */
+    @Override
+    public @NotNull Iterator<Struct> iterator() {
+        expunge();
+        Iterator<Entry> entryIterator = entries.iterator();
+        return new Iterator<>() {
+            private @Nullable Struct next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && entryIterator.hasNext())
+                    next = entryIterator.next().get();
+                return next != null;
+            }
+
+            @Override
+            public Struct next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Struct struct = next;
+                next = null;
+                return struct;
+            }
+        };
+    }
+
+    /**
+     * A weak reference hashed by the identity of its referent.
+     * A cleared entry is only equal to itself, which still allows it to be removed once it is polled from the queue.
+     */
+    private static final class Entry extends WeakReference<Struct> {
+
+        private final int hash;
+
+        Entry(Struct struct, ReferenceQueue<Struct> queue) {
+            super(struct, queue);
+            this.hash = System.identityHashCode(struct);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Entry other))
+                return false;
+            Struct struct = get();
+            return struct != null && struct == other.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
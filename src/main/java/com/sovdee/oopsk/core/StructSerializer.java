@@ -0,0 +1,362 @@
+package com.sovdee.oopsk.core;
+
+import ch.njol.skript.classes.ClassInfo;
+import ch.njol.skript.classes.Serializer;
+import ch.njol.skript.registrations.Classes;
+import ch.njol.skript.variables.SerializedVariable;
+import ch.njol.yggdrasil.Fields;
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.Field.Modifier;
+import com.sovdee.oopsk.core.generation.ReflectionUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.StreamCorruptedException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializes structs for Skript's variable storage as a single compact byte array.
+ * <br>
+ * The format is the template name, its {@link StructTemplate#getSchemaHash() schema hash}, a description of each field
+ * in slot order, and then each field's values, serialized by the field type's own serializer. Dynamic fields are not saved.
+ * <br>
+ * Loading never updates structs itself. If the loaded template of the same name has the same schema hash, the values
+ * are used directly. Otherwise, the struct is given a retired template built from the saved field descriptions and is
+ * updated to the loaded template via {@link Struct#updateFromTemplate(StructTemplate)} the first time it's used, so
+ * loading a variables database never needs a pass over every struct. Variables are loaded before scripts, so this is
+ * usually the case at startup: the struct is registered as an orphan until its template loads.
+ * <br>
+ * Values that cannot be serialized, like entities, are not saved, the same as Skript does for variables.
+ * Structs that contain themselves, directly or through other structs, save the repeated struct as missing.
+ */
+public class StructSerializer extends Serializer<Struct> {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final int SINGLE = 1;
+    private static final int CONSTANT = 1 << 1;
+    private static final int DYNAMIC = 1 << 2;
+    private static final int CACHED = 1 << 3;
+
+    private static final int TRACKED = 1;
+
+    /**
+     * Retired templates describing saved layouts that differ from the loaded templates, shared by all structs saved with them.
+     * Held weakly, so a layout is dropped once every struct using it has been updated or collected.
+     */
+    private static final Map<SchemaKey, StoredTemplate> storedTemplates = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<StructTemplate> collectedTemplates = new ReferenceQueue<>();
+
+    private record SchemaKey(String name, long schemaHash, boolean tracked) {}
+
+    private static final class StoredTemplate extends WeakReference<StructTemplate> {
+
+        private final SchemaKey key;
+
+        StoredTemplate(StructTemplate template, SchemaKey key) {
+            super(template, collectedTemplates);
+            this.key = key;
+        }
+
+    }
+
+    /**
+     * The structs currently being serialized on each thread, to break reference cycles between structs.
+     */
+    private static final ThreadLocal<Set<Struct>> serializing = ThreadLocal.withInitial(() -> Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    @Override
+    public @NotNull Fields serialize(@NotNull Struct struct) throws NotSerializableException {
+        Set<Struct> parents = serializing.get();
+        parents.add(struct);
+        try {
+            Fields fields = new Fields();
+            fields.putObject("data", write(struct, parents));
+            return fields;
+        } catch (IOException e) {
+            NotSerializableException exception = new NotSerializableException("Failed to serialize " + struct + ": " + e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        } finally {
+            parents.remove(struct);
+        }
+    }
+
+    private static byte[] write(Struct struct, Set<Struct> parents) throws IOException {
+        struct.migrateIfRetired();
+        // nested structs are written after the values are copied, so no two structs are locked at once
+        Struct.StoredValues stored = struct.getStoredValues();
+        StructTemplate template = stored.template();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+        out.writeUTF(template.getName());
+        out.writeLong(template.getSchemaHash());
+        out.writeByte(template.isTracked() ? TRACKED : 0);
+
+        writeFieldDescriptions(out, template);
+
+        // values
+        for (int slot = 0; slot < template.getFieldCount(); slot++) {
+            if (!template.getField(slot).dynamic())
+                writeValues(out, stored.values()[slot], parents);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a description of each field of a template, in slot order, so the layout can be rebuilt by
+     * {@link #readFieldDescriptions} even after the template has changed.
+     *
+     * @param out      The output to write to.
+     * @param template The template to describe.
+     */
+    static void writeFieldDescriptions(DataOutput out, StructTemplate template) throws IOException {
+        int fieldCount = template.getFieldCount();
+        out.writeShort(fieldCount);
+        for (int slot = 0; slot < fieldCount; slot++) {
+            Field<?> field = template.getField(slot);
+            out.writeUTF(field.name());
+            out.writeUTF(field.type().getCodeName());
+            out.writeByte((field.single() ? SINGLE : 0)
+                    | (field.constant() ? CONSTANT : 0)
+                    | (field.dynamic() ? DYNAMIC : 0)
+                    | (field.cached() ? CACHED : 0));
+        }
+    }
+
+    /**
+     * Reads field descriptions written by {@link #writeFieldDescriptions}.
+     *
+     * @param in The input to read from.
+     * @return The described fields, in slot order. They have no default values.
+     */
+    static Field<?>[] readFieldDescriptions(DataInput in) throws IOException {
+        int fieldCount = in.readUnsignedShort();
+        Field<?>[] fields = new Field<?>[fieldCount];
+        for (int slot = 0; slot < fieldCount; slot++) {
+            String fieldName = in.readUTF();
+            ClassInfo<?> type = getClassInfo(in.readUTF());
+            int flags = in.readByte();
+            Set<Modifier> modifiers = EnumSet.noneOf(Modifier.class);
+            if ((flags & CONSTANT) != 0)
+                modifiers.add(Modifier.CONSTANT);
+            if ((flags & DYNAMIC) != 0)
+                modifiers.add(Modifier.DYNAMIC);
+            if ((flags & CACHED) != 0)
+                modifiers.add(Modifier.CACHED);
+            fields[slot] = new Field<>(fieldName, type, (flags & SINGLE) != 0, null, modifiers);
+        }
+        return fields;
+    }
+
+    /**
+     * @return The structs currently being serialized on this thread. Add a struct to this set while serializing its
+     *         values with {@link #writeValues}, so references back to it are skipped.
+     */
+    static Set<Struct> serializingStructs() {
+        return serializing.get();
+    }
+
+    /**
+     * Writes the values of a field: the number of values, then the type and serialized bytes of each.
+     * Values that cannot be serialized, and structs that are currently being serialized, are skipped.
+     *
+     * @param out     The output to write to.
+     * @param values  The values to write. Null is written as no values.
+     * @param parents The structs currently being serialized.
+     */
+    static void writeValues(DataOutput out, Object @Nullable [] values, Set<Struct> parents) throws IOException {
+        List<SerializedVariable.Value> serialized = new ArrayList<>(values == null ? 0 : values.length);
+        if (values != null) {
+            for (Object value : values) {
+                if (value == null || (value instanceof Struct nested && parents.contains(nested)))
+                    continue;
+                SerializedVariable.Value serializedValue = Classes.serialize(value);
+                if (serializedValue != null)
+                    serialized.add(serializedValue);
+            }
+        }
+        out.writeInt(serialized.size());
+        for (SerializedVariable.Value value : serialized) {
+            out.writeUTF(value.type);
+            out.writeInt(value.data.length);
+            out.write(value.data);
+        }
+    }
+
+    /**
+     * Reads values written by {@link #writeValues}.
+     *
+     * @param in    The input to read from.
+     * @param field The field the values are for. Values of other types are dropped.
+     * @return The values, as an array of the field's type.
+     */
+    static Object[] readValues(DataInput in, Field<?> field) throws IOException {
+        Class<?> type = field.type().getC();
+        int count = in.readInt();
+        List<Object> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String valueType = in.readUTF();
+            byte[] valueData = new byte[in.readInt()];
+            in.readFully(valueData);
+            Object value = Classes.deserialize(valueType, valueData);
+            if (type.isInstance(value))
+                values.add(value);
+        }
+        return values.toArray(field.emptyValue());
+    }
+
+    /**
+     * Checks values written by {@link #writeValues} for any that must be deserialized on the main thread,
+     * according to {@link Serializer#mustSyncDeserialization()}, without deserializing them.
+     *
+     * @param data The written values.
+     * @return Whether reading the values with {@link #readValues} must happen on the main thread.
+     */
+    static boolean mustSyncDeserialization(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            ClassInfo<?> classInfo = Classes.getClassInfoNoError(in.readUTF());
+            Serializer<?> serializer = classInfo == null ? null : classInfo.getSerializer();
+            if (serializer != null && serializer.mustSyncDeserialization())
+                return true;
+            in.skipNBytes(in.readInt());
+        }
+        return false;
+    }
+
+    @Override
+    protected @Nullable Struct deserialize(@NotNull Fields fields) throws StreamCorruptedException {
+        byte[] data = fields.getObject("data", byte[].class);
+        if (data == null)
+            throw new StreamCorruptedException("Missing struct data");
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(data)));
+        } catch (IOException e) {
+            StreamCorruptedException exception = new StreamCorruptedException("Failed to read struct: " + e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    private static Struct read(DataInputStream in) throws IOException {
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION)
+            throw new StreamCorruptedException("Unknown struct format version " + version);
+        String name = in.readUTF();
+        long schemaHash = in.readLong();
+        boolean tracked = (in.readByte() & TRACKED) != 0;
+
+        Field<?>[] storedFields = readFieldDescriptions(in);
+        int fieldCount = storedFields.length;
+
+        // values
+        Object[][] fieldValues = new Object[fieldCount][];
+        for (int slot = 0; slot < fieldCount; slot++) {
+            Field<?> field = storedFields[slot];
+            if (field.dynamic())
+                continue;
+            fieldValues[slot] = readValues(in, field);
+        }
+
+        StructTemplate current = Oopsk.getTemplateManager() == null ? null : Oopsk.getTemplateManager().getTemplate(name);
+        StructTemplate template;
+        if (current != null && current.getSchemaHash() == schemaHash) {
+            // same layout, use the values as-is
+            template = current;
+        } else {
+            // the template has changed or isn't loaded yet, so keep the saved layout until the struct is next used
+            template = getStoredTemplate(name, schemaHash, tracked, storedFields);
+        }
+        Struct struct = template.getFactory().restore(template, fieldValues);
+        if (Oopsk.getStructManager() != null)
+            Oopsk.getStructManager().registerStruct(struct, template);
+        return struct;
+    }
+
+    /**
+     * Gets the retired template of a saved layout, creating it if no loaded struct uses it.
+     *
+     * @param name         The name of the template.
+     * @param schemaHash   The schema hash the layout was saved with.
+     * @param tracked      Whether the template tracks its structs.
+     * @param storedFields The fields of the layout, from {@link #readFieldDescriptions}.
+     * @return The retired template.
+     */
+    static StructTemplate getStoredTemplate(String name, long schemaHash, boolean tracked, Field<?>[] storedFields) {
+        SchemaKey key = new SchemaKey(name, schemaHash, tracked);
+        Reference<? extends StructTemplate> collected;
+        while ((collected = collectedTemplates.poll()) != null) {
+            StoredTemplate stored = (StoredTemplate) collected;
+            storedTemplates.remove(stored.key, stored);
+        }
+        StructTemplate[] template = new StructTemplate[1];
+        storedTemplates.compute(key, (k, stored) -> {
+            template[0] = stored == null ? null : stored.get();
+            if (template[0] != null)
+                return stored;
+            template[0] = new StructTemplate(k.name(), List.of(storedFields), Oopsk.getClassManager().getStructClass(k.name()), k.tracked());
+            template[0].retire();
+            return new StoredTemplate(template[0], k);
+        });
+        return template[0];
+    }
+
+    /**
+     * Gets the type of a saved field. Struct types whose type isn't registered are looked up from the custom class of
+     * their loaded template. Falls back to object for any other unknown types, so that the values can still be loaded.
+     */
+    private static ClassInfo<?> getClassInfo(String codeName) {
+        ClassInfo<?> classInfo = Classes.getClassInfoNoError(codeName);
+        if (classInfo != null)
+            return classInfo;
+        TemplateManager templateManager = Oopsk.getTemplateManager();
+        if (templateManager != null) {
+            for (StructTemplate template : templateManager.getTemplates()) {
+                if (template.getCustomClass() == null || !ReflectionUtils.getCodeName(template.getName()).equals(codeName))
+                    continue;
+                classInfo = Classes.getExactClassInfo(template.getCustomClass());
+                if (classInfo != null)
+                    return classInfo;
+            }
+        }
+        return Classes.getExactClassInfo(Object.class);
+    }
+
+    @Override
+    public void deserialize(Struct struct, Fields fields) {
+        assert false;
+    }
+
+    @Override
+    public boolean mustSyncDeserialization() {
+        return false;
+    }
+
+    @Override
+    protected boolean canBeInstantiated() {
+        return false;
+    }
+
+}
@@ -0,0 +1,1126 @@
+package com.sovdee.oopsk.core;
+
+import com.sovdee.oopsk.Oopsk;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A persistent, keyed collection of structs of a single template, backed by a memory-mapped file.
+ * Structs are not kept in memory: {@link #get(String)} reads a struct from the file and {@link #put(String, Struct)}
+ * writes one to it, so stores can hold far more structs than would fit on the heap.
+ * <br>
+ * Each struct occupies a fixed-size record, laid out from the template's fields. Records are mapped in segments of up to
+ * 1 GB, so a store isn't limited to the 2 GB a single mapping can hold. Single fields of integer, decimal, number and
+ * boolean types are stored inline. Other values are serialized the same way as for variables and written to a separate
+ * overflow file that the record points into. Overflow space freed by changes is reclaimed when the store is flushed,
+ * if enough of it is unused. On open, only the record keys are read, to build the key index. The index is kept on the
+ * heap, at roughly 100 bytes plus the key's length per struct, so opening takes time and memory in proportion to the
+ * number of keys.
+ * <br>
+ * Compaction writes the live overflow data to a new overflow file, and the records' new offsets to a journal, before
+ * changing any record. If it's interrupted, the next open either finishes it from the journal or discards it.
+ * <br>
+ * A store is tied to the layout of its template, see {@link StructTemplate#getSchemaHash()}, and keeps a description of
+ * that layout's fields after its header. Structs read after the template has changed are updated to it when they're next
+ * used, but new structs can't be written until the store is reopened. Opening a store whose layout differs from its
+ * template's rewrites it for the new layout first, updating each struct the same way as when a template is reloaded.
+ * The rewrite reads and writes every struct on the thread that opens the store, which must be the main thread, as new
+ * fields' defaults are evaluated for each struct. The rewritten store is written next to the old one and only swapped in once it's complete.
+ * <br>
+ * Stores are safe to use from multiple threads. Keys are limited to {@value #MAX_KEY_BYTES} bytes of UTF-8.
+ */
+public class StructStore implements Closeable {
+
+    public static final int MAX_KEY_BYTES = 63;
+
+    private static final int MAGIC = 0x4f534b53; // OSKS
+    private static final int VERSION = 2; // version 1 had no field descriptions
+
+    // header layout
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_SCHEMA = 8;
+    private static final int HEADER_RECORD_SIZE = 16;
+    private static final int HEADER_RECORD_COUNT = 20;
+    private static final int HEADER_GARBAGE = 24;
+    private static final int HEADER_OVERFLOW_GENERATION = 32;
+    private static final int HEADER_DATA_START = 40;
+    // followed by the template name and field descriptions, then the records from the data start
+
+    // record layout: state, key length, key, fields
+    private static final int RECORD_STATE = 0;
+    private static final int RECORD_KEY = 1;
+    private static final int RECORD_FIELDS = RECORD_KEY + 1 + MAX_KEY_BYTES;
+    private static final byte FREE = 0;
+    private static final byte LIVE = 1;
+
+    // field kinds, and the sizes of their inline data
+    private static final byte DYNAMIC = 0;
+    private static final byte VARIABLE = 1; // overflow offset (long) and length (int)
+    private static final byte INTEGER = 2;  // presence (byte) and value (long)
+    private static final byte DECIMAL = 3;  // presence (byte) and value (double)
+    private static final byte NUMBER = 4;   // tag (byte): absent, long or double, and value
+    private static final byte BOOLEAN = 5;  // absent, false or true (byte)
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long SEGMENT_BYTES = 1L << 30;
+    private static final long MIN_COMPACTION_GARBAGE = 1 << 20;
+    private static final String RECORDS = "records.dat";
+    private static final String JOURNAL = "compaction.journal";
+
+    private final String name;
+    private final StructTemplate template;
+    private final long schemaHash;
+    private final byte[] kinds;
+    private final int[] offsets;
+    private final int recordSize;
+    private final int recordsPerSegment;
+    private int dataStart = HEADER_SIZE;
+
+    private final Path directory;
+    private final Path recordsPath;
+    private final FileChannel records;
+    private FileChannel overflow;
+    private long overflowGeneration;
+    private MappedByteBuffer header;
+    // records are never split between segments. All but the last segment are full
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private int capacity;
+
+    private int recordCount;
+    private long garbage;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final Deque<Integer> freeRecords = new ArrayDeque<>();
+    private boolean closed;
+
+    /**
+     * Opens a store in the given directory, creating it if it doesn't exist. If the store was written for a different
+     * layout of the template, it's rewritten for the current layout first, which reads and writes every struct in it
+     * before this returns.
+     *
+     * @param name      The name of the store.
+     * @param directory The directory to keep the store's files in.
+     * @param template  The template of the structs in the store.
+     * @return The open store.
+     * @throws IOException if the files could not be opened or rewritten, or hold structs of a different template.
+     */
+    public static @NotNull StructStore open(@NotNull String name, @NotNull Path directory, @NotNull StructTemplate template) throws IOException {
+        finishRewrite(directory);
+        StructTemplate stored = readStoredLayout(name, directory, template);
+        if (stored != null)
+            rewrite(name, directory, stored, template);
+        return new StructStore(name, directory, template);
+    }
+
+    /**
+     * Opens the files of a store laid out for exactly the given template, creating them if they don't exist.
+     */
+    private StructStore(String name, Path directory, StructTemplate template) throws IOException {
+        this.name = name;
+        this.template = template;
+        this.schemaHash = template.getSchemaHash();
+
+        // lay out the fields
+        int fieldCount = template.getFieldCount();
+        kinds = new byte[fieldCount];
+        offsets = new int[fieldCount];
+        int offset = RECORD_FIELDS;
+        for (int slot = 0; slot < fieldCount; slot++) {
+            kinds[slot] = kindOf(template.getField(slot));
+            offsets[slot] = offset;
+            offset += sizeOf(kinds[slot]);
+        }
+        recordSize = offset;
+        recordsPerSegment = (int) Math.max(1, SEGMENT_BYTES / recordSize);
+
+        Files.createDirectories(directory);
+        this.directory = directory;
+        recordsPath = directory.resolve(RECORDS);
+        records = FileChannel.open(recordsPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (records.size() < HEADER_SIZE) {
+                ByteArrayOutputStream layout = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(layout);
+                out.writeUTF(template.getName());
+                StructSerializer.writeFieldDescriptions(out, template);
+                // records start on an 8 byte boundary
+                dataStart = (HEADER_SIZE + layout.size() + 7) & ~7;
+                ByteBuffer descriptions = ByteBuffer.wrap(layout.toByteArray());
+                while (descriptions.hasRemaining())
+                    records.write(descriptions, HEADER_SIZE + descriptions.position());
+                header = records.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                header.putInt(HEADER_MAGIC, MAGIC);
+                header.putInt(HEADER_VERSION, VERSION);
+                header.putLong(HEADER_SCHEMA, schemaHash);
+                header.putInt(HEADER_RECORD_SIZE, recordSize);
+                header.putInt(HEADER_RECORD_COUNT, 0);
+                header.putLong(HEADER_GARBAGE, 0);
+                header.putLong(HEADER_OVERFLOW_GENERATION, 0);
+                header.putInt(HEADER_DATA_START, dataStart);
+                ensureCapacity(INITIAL_CAPACITY - 1);
+            } else {
+                header = records.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                int version = header.getInt(HEADER_VERSION);
+                if (header.getInt(HEADER_MAGIC) != MAGIC || version < 1 || version > VERSION)
+                    throw new IOException("'" + recordsPath + "' is not a struct store, or was created by a newer version of oopsk.");
+                if (header.getLong(HEADER_SCHEMA) != schemaHash || header.getInt(HEADER_RECORD_SIZE) != recordSize)
+                    throw new IOException("Struct store '" + name + "' was created for a different version of the " + template.getName() + " template.");
+                recordCount = header.getInt(HEADER_RECORD_COUNT);
+                garbage = header.getLong(HEADER_GARBAGE);
+                overflowGeneration = header.getLong(HEADER_OVERFLOW_GENERATION);
+                if (version > 1)
+                    dataStart = header.getInt(HEADER_DATA_START);
+                long storedRecords = (records.size() - dataStart) / recordSize;
+                ensureCapacity((int) Math.max(recordCount, Math.min(storedRecords, Integer.MAX_VALUE)) - 1);
+                recoverCompaction();
+                buildIndex();
+            }
+            overflow = FileChannel.open(overflowPath(overflowGeneration), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException | RuntimeException e) {
+            records.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the layout an existing store was written for, if it differs from the template's current layout.
+     *
+     * @return A retired template with the stored layout, or null if the store doesn't exist yet or already has the
+     *         template's layout.
+     * @throws IOException if the store holds structs of a different template, or its layout can't be read.
+     */
+    private static @Nullable StructTemplate readStoredLayout(String name, Path directory, StructTemplate template) throws IOException {
+        Path recordsPath = directory.resolve(RECORDS);
+        if (!Files.exists(recordsPath) || Files.size(recordsPath) < HEADER_SIZE)
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(recordsPath)))) {
+            byte[] bytes = new byte[HEADER_SIZE];
+            in.readFully(bytes);
+            ByteBuffer header = ByteBuffer.wrap(bytes);
+            int version = header.getInt(HEADER_VERSION);
+            // unknown files are reported when they're opened
+            if (header.getInt(HEADER_MAGIC) != MAGIC || version < 1 || version > VERSION)
+                return null;
+            long storedHash = header.getLong(HEADER_SCHEMA);
+            if (storedHash == template.getSchemaHash())
+                return null;
+            if (version == 1)
+                throw new IOException("Struct store '" + name + "' was created for a different version of the " + template.getName() + " template, by a version of oopsk that can't update it.");
+            String storedName = in.readUTF();
+            if (!storedName.equals(template.getName()))
+                throw new IOException("Struct store '" + name + "' holds " + storedName + " structs, not " + template.getName() + " structs.");
+            Field<?>[] fields = StructSerializer.readFieldDescriptions(in);
+            return StructSerializer.getStoredTemplate(storedName, storedHash, template.isTracked(), fields);
+        }
+    }
+
+    /**
+     * Rewrites a store for the current layout of its template. The new store is written to a sibling directory, which
+     * is marked complete and then swapped in by {@link #finishRewrite(Path)}.
+     */
+    private static void rewrite(String name, Path directory, StructTemplate stored, StructTemplate template) throws IOException {
+        Path rewritten = sibling(directory, ".rewrite");
+        deleteRecursively(rewritten);
+        boolean dataLost = false;
+        StructStore source = new StructStore(name, directory, stored);
+        try (StructStore target = new StructStore(name, rewritten, template)) {
+            for (Map.Entry<String, Integer> entry : source.index.entrySet()) {
+                Struct struct = source.read(entry.getValue(), stored, false).finish();
+                dataLost |= struct.updateFromTemplate(template);
+                target.put(entry.getKey(), struct);
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                deleteRecursively(rewritten);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        } finally {
+            // the old store is replaced, so nothing needs to be written to it
+            source.closeFiles();
+        }
+        if (dataLost)
+            template.warnMigrationDataLoss();
+        Files.createFile(sibling(directory, ".rewrite-complete"));
+        finishRewrite(directory);
+    }
+
+    /**
+     * Swaps in a complete rewrite of a store, or discards one that was interrupted before it was complete.
+     */
+    private static void finishRewrite(Path directory) throws IOException {
+        Path rewritten = sibling(directory, ".rewrite");
+        Path previous = sibling(directory, ".old");
+        Path complete = sibling(directory, ".rewrite-complete");
+        if (!Files.exists(complete)) {
+            // the old store is untouched until the rewrite is complete
+            deleteRecursively(rewritten);
+            return;
+        }
+        if (Files.exists(rewritten)) {
+            if (Files.exists(directory)) {
+                deleteRecursively(previous);
+                Files.move(directory, previous, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(rewritten, directory, StandardCopyOption.ATOMIC_MOVE);
+        }
+        deleteRecursively(previous);
+        Files.delete(complete);
+    }
+
+    private static Path sibling(Path directory, String suffix) {
+        return directory.resolveSibling(directory.getFileName() + suffix);
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path))
+            return;
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(path)) {
+            files = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path file : files)
+            Files.delete(file);
+    }
+
+    private static byte kindOf(Field<?> field) {
+        if (field.dynamic())
+            return DYNAMIC;
+        PrimitiveKind primitive = PrimitiveKind.of(field);
+        if (primitive == null)
+            return VARIABLE;
+        return switch (primitive) {
+            case INTEGER -> INTEGER;
+            case DECIMAL -> DECIMAL;
+            case NUMBER -> NUMBER;
+            case BOOLEAN -> BOOLEAN;
+        };
+    }
+
+    private static int sizeOf(byte kind) {
+        return switch (kind) {
+            case DYNAMIC -> 0;
+            case VARIABLE -> 12;
+            case BOOLEAN -> 1;
+            default -> 9;
+        };
+    }
+
+    /**
+     * Maps enough of the records file to hold the given record, growing the last segment or adding new ones.
+     *
+     * @param record The record that must fit.
+     * @throws IOException if the store can't hold any more records, or the file could not be mapped.
+     */
+    private void ensureCapacity(int record) throws IOException {
+        if (record < capacity)
+            return;
+        if (record == Integer.MAX_VALUE)
+            throw new IOException("Struct store '" + name + "' is full.");
+        long newCapacity = Math.min(Math.max(record + 1L, Math.max(capacity * 2L, INITIAL_CAPACITY)), Integer.MAX_VALUE);
+        int lastSegment = (int) ((newCapacity - 1) / recordsPerSegment);
+        for (int segment = Math.max(segments.size() - 1, 0); segment <= lastSegment; segment++) {
+            long segmentRecords = Math.min(recordsPerSegment, newCapacity - (long) segment * recordsPerSegment);
+            MappedByteBuffer mapped = records.map(FileChannel.MapMode.READ_WRITE, segmentStart(segment), segmentRecords * recordSize);
+            if (segment < segments.size()) {
+                segments.set(segment, mapped);
+            } else {
+                segments.add(mapped);
+            }
+        }
+        capacity = (int) newCapacity;
+    }
+
+    private long segmentStart(int segment) {
+        return dataStart + (long) segment * recordsPerSegment * recordSize;
+    }
+
+    /**
+     * @return The mapped segment holding a record.
+     */
+    private MappedByteBuffer segment(int record) {
+        return segments.get(record / recordsPerSegment);
+    }
+
+    /**
+     * @return The position of a record within its segment.
+     */
+    private int position(int record) {
+        return (record % recordsPerSegment) * recordSize;
+    }
+
+    /**
+     * @return The overflow file of a generation. Each compaction starts a new generation.
+     */
+    private Path overflowPath(long generation) {
+        return directory.resolve(generation == 0 ? "overflow.dat" : "overflow-" + generation + ".dat");
+    }
+
+    /**
+     * Finishes a compaction that was interrupted after its journal was complete, or discards one that was interrupted
+     * before, along with any overflow files that are no longer used.
+     */
+    private void recoverCompaction() throws IOException {
+        Path journalPath = directory.resolve(JOURNAL);
+        if (Files.exists(journalPath))
+            applyJournal(journalPath);
+        Files.deleteIfExists(journalPath);
+        Path overflowPath = overflowPath(overflowGeneration);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "overflow*.dat")) {
+            for (Path file : files) {
+                if (!file.equals(overflowPath))
+                    Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Points the records at the overflow file written by a compaction, if its journal is complete.
+     * The journal holds the new generation, then the record, field offset and new overflow offset of each value,
+     * then -1 and a checksum of everything before it.
+     *
+     * @return Whether the journal was complete and has been applied.
+     */
+    private boolean applyJournal(Path journalPath) throws IOException {
+        CRC32 checksum = new CRC32();
+        long generation;
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(journalPath)), checksum))) {
+            generation = in.readLong();
+            while (in.readInt() >= 0) {
+                in.readInt();
+                in.readLong();
+            }
+            long expected = checksum.getValue();
+            if (in.readLong() != expected)
+                return false;
+        } catch (EOFException e) {
+            return false;
+        }
+        if (generation < overflowGeneration || !Files.exists(overflowPath(generation)))
+            return false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            in.readLong();
+            int record;
+            while ((record = in.readInt()) >= 0) {
+                int fieldOffset = in.readInt();
+                segment(record).putLong(position(record) + fieldOffset, in.readLong());
+            }
+        }
+        overflowGeneration = generation;
+        garbage = 0;
+        header.putLong(HEADER_OVERFLOW_GENERATION, generation);
+        header.putLong(HEADER_GARBAGE, 0);
+        forceRecords();
+        return true;
+    }
+
+    private void buildIndex() {
+        for (int record = 0; record < recordCount; record++) {
+            ByteBuffer data = segment(record);
+            int position = position(record);
+            if (data.get(position + RECORD_STATE) == LIVE) {
+                index.put(readKey(data, position), record);
+            } else {
+                freeRecords.add(record);
+            }
+        }
+    }
+
+    private static String readKey(ByteBuffer data, int position) {
+        byte[] key = new byte[data.get(position + RECORD_KEY) & 0xFF];
+        data.get(position + RECORD_KEY + 1, key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The name of this store.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The template this store was opened with.
+     */
+    public StructTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return The number of structs in this store.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return The keys of all structs in this store.
+     */
+    public synchronized @Unmodifiable Set<String> keys() {
+        return Set.copyOf(index.keySet());
+    }
+
+    /**
+     * @param key The key to check.
+     * @return Whether a struct is stored under the key.
+     */
+    public synchronized boolean contains(@NotNull String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Reads the struct stored under a key. Each call creates a new struct; changes to it are not written back
+     * until it is {@link #put(String, Struct) put} again.
+     *
+     * @param key The key of the struct.
+     * @return The struct, or null if there is none.
+     */
+    public synchronized @Nullable Struct get(@NotNull String key) {
+        checkOpen();
+        Integer record = index.get(key);
+        if (record == null)
+            return null;
+        StructTemplate target = readTemplate();
+        Struct struct;
+        try {
+            struct = read(record, target, false).finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read struct '" + key + "' from store '" + name + "'", e);
+        }
+        if (Oopsk.getStructManager() != null)
+            Oopsk.getStructManager().registerStruct(struct, target);
+        return struct;
+    }
+
+    /**
+     * Reads every struct in this store in turn, holding the store's lock throughout so none are put or removed meanwhile.
+     * Only one struct is read at a time and the keys aren't copied, so this suits dumping large stores. The structs are
+     * not registered with the struct manager, as they're expected to be dropped once the action is done with them.
+     *
+     * @param action What to do with each key and its struct. It runs under the store's lock, so it should not block for long.
+     * @return The number of structs read.
+     * @throws IOException if a struct could not be read, or the action failed.
+     */
+    public synchronized int forEach(@NotNull StoredStructAction action) throws IOException {
+        checkOpen();
+        StructTemplate target = readTemplate();
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : index.entrySet()) {
+            action.accept(entry.getKey(), read(entry.getValue(), target, false).finish());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * An action on each struct of a store.
+     *
+     * @see #forEach(StoredStructAction)
+     */
+    @FunctionalInterface
+    public interface StoredStructAction {
+
+        void accept(@NotNull String key, @NotNull Struct struct) throws IOException;
+
+    }
+
+    /**
+     * Reads the struct stored under a key for loading it in the background. Values of types that must be deserialized
+     * on the main thread, see {@link ch.njol.skript.classes.Serializer#mustSyncDeserialization()}, are left serialized
+     * until {@link PendingStruct#finish()} is called, which must then happen on the main thread.
+     *
+     * @param key The key of the struct.
+     * @return The struct, or null if there is none.
+     */
+    synchronized @Nullable PendingStruct getPending(@NotNull String key) {
+        checkOpen();
+        Integer record = index.get(key);
+        if (record == null)
+            return null;
+        try {
+            return read(record, readTemplate(), true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read struct '" + key + "' from store '" + name + "'", e);
+        }
+    }
+
+    /**
+     * @return The template to read structs as: the loaded template if it still has the same layout, otherwise this
+     *         store's template, and the structs are updated when they're next used.
+     */
+    private StructTemplate readTemplate() {
+        TemplateManager templateManager = Oopsk.getTemplateManager();
+        StructTemplate current = templateManager == null ? null : templateManager.getTemplate(template.getName());
+        return current != null && current.getSchemaHash() == schemaHash ? current : template;
+    }
+
+    /**
+     * Reads a record, copying it out of the store so it can be finished without holding the store.
+     *
+     * @param record    The record to read.
+     * @param target    The template of the struct. Must have this store's layout.
+     * @param deferSync Whether to leave values that must be deserialized on the main thread serialized.
+     */
+    private PendingStruct read(int record, StructTemplate target, boolean deferSync) throws IOException {
+        byte[] copy = new byte[recordSize];
+        segment(record).get(position(record), copy);
+        ByteBuffer data = ByteBuffer.wrap(copy);
+        Object[][] values = new Object[kinds.length][];
+        byte[][] serialized = new byte[kinds.length][];
+        for (int slot = 0; slot < kinds.length; slot++) {
+            if (template.getPrimitiveKind(slot) != null)
+                continue;
+            Field<?> field = template.getField(slot);
+            if (kinds[slot] != VARIABLE) {
+                values[slot] = readField(data, offsets[slot], kinds[slot], field);
+                continue;
+            }
+            byte[] bytes = readOverflow(data, offsets[slot]);
+            if (bytes == null) {
+                values[slot] = field.emptyValue();
+            } else if (deferSync && StructSerializer.mustSyncDeserialization(bytes)) {
+                serialized[slot] = bytes;
+            } else {
+                values[slot] = StructSerializer.readValues(new DataInputStream(new ByteArrayInputStream(bytes)), field);
+            }
+        }
+        return new PendingStruct(target, data, values, serialized);
+    }
+
+    /**
+     * A struct read from a store whose values may not all have been deserialized yet.
+     */
+    final class PendingStruct {
+
+        private final StructTemplate target;
+        private final ByteBuffer data;
+        private final Object[][] values;
+        private final byte[][] serialized;
+
+        private PendingStruct(StructTemplate target, ByteBuffer data, Object[][] values, byte[][] serialized) {
+            this.target = target;
+            this.data = data;
+            this.values = values;
+            this.serialized = serialized;
+        }
+
+        /**
+         * Deserializes the remaining values and creates the struct. The struct is not registered.
+         *
+         * @return The struct.
+         * @throws IOException if a value could not be read.
+         */
+        Struct finish() throws IOException {
+            for (int slot = 0; slot < serialized.length; slot++) {
+                if (serialized[slot] != null)
+                    values[slot] = StructSerializer.readValues(new DataInputStream(new ByteArrayInputStream(serialized[slot])), template.getField(slot));
+            }
+            Struct struct = target.getFactory().restore(target, values);
+            // fields stored unboxed are copied straight into the struct
+            for (int slot = 0; slot < kinds.length; slot++) {
+                if (template.getPrimitiveKind(slot) != null)
+                    readPrimitive(data, offsets[slot], kinds[slot], struct, slot);
+            }
+            return struct;
+        }
+
+    }
+
+    /**
+     * Writes a struct under a key, replacing any struct already stored under it.
+     *
+     * @param key    The key to store the struct under.
+     * @param struct The struct to store. Must be of this store's template.
+     * @throws IllegalArgumentException if the key is too long, or the struct has a different template or layout.
+     */
+    public void put(@NotNull String key, @NotNull Struct struct) {
+        put(key, encode(struct));
+    }
+
+    /**
+     * Serializes a struct for this store's layout, so it can be written later with {@link #put(String, EncodedStruct)}.
+     * Nested structs are serialized as well, so later changes to the struct or any struct it holds don't affect the
+     * encoded data. This doesn't touch the store's files, and doesn't need the store's lock.
+     *
+     * @param struct The struct to encode. Must be of this store's template.
+     * @return The encoded struct.
+     * @throws IllegalArgumentException if the struct has a different template or layout.
+     */
+    @NotNull EncodedStruct encode(@NotNull Struct struct) {
+        struct.migrateIfRetired();
+        ByteBuffer fields = ByteBuffer.allocate(recordSize - RECORD_FIELDS);
+        Object[][] values = new Object[kinds.length][];
+        StructTemplate structTemplate;
+        // read under the struct's lock, so it can't be updated to a reloaded template halfway through. The values are
+        // serialized afterward, as nested structs are read under their own locks
+        synchronized (struct) {
+            structTemplate = struct.getTemplate();
+            if (!structTemplate.getName().equals(template.getName()))
+                throw new IllegalArgumentException("Struct store '" + name + "' holds " + template.getName() + " structs, not " + structTemplate.getName() + " structs.");
+            if (structTemplate.getSchemaHash() != schemaHash)
+                throw new IllegalArgumentException("The " + template.getName() + " template has changed since struct store '" + name + "' was opened. Close and reopen the store to save structs of the new template.");
+            for (int slot = 0; slot < kinds.length; slot++) {
+                if (structTemplate.getPrimitiveKind(slot) != null) {
+                    writePrimitive(fields, offsets[slot] - RECORD_FIELDS, kinds[slot], struct, slot);
+                } else {
+                    values[slot] = struct.getStoredValue(slot);
+                }
+            }
+        }
+
+        try {
+            ByteArrayOutputStream overflowData = new ByteArrayOutputStream();
+            Set<Struct> parents = StructSerializer.serializingStructs();
+            parents.add(struct);
+            try {
+                for (int slot = 0; slot < kinds.length; slot++) {
+                    if (structTemplate.getPrimitiveKind(slot) == null)
+                        writeField(fields, offsets[slot] - RECORD_FIELDS, kinds[slot], values[slot], parents, overflowData);
+                }
+            } finally {
+                parents.remove(struct);
+            }
+            return new EncodedStruct(this, fields.array(), overflowData.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize a struct for store '" + name + "'", e);
+        }
+    }
+
+    /**
+     * Writes an encoded struct under a key, replacing any struct already stored under it.
+     *
+     * @param key     The key to store the struct under.
+     * @param encoded The struct, encoded by this store.
+     * @throws IllegalArgumentException if the key is too long, or the struct was encoded by another store.
+     */
+    synchronized void put(@NotNull String key, @NotNull EncodedStruct encoded) {
+        checkOpen();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_BYTES)
+            throw new IllegalArgumentException("Struct store keys can be at most " + MAX_KEY_BYTES + " bytes long: '" + key + "'");
+        if (encoded.store != this)
+            throw new IllegalArgumentException("The struct was encoded for a different store than '" + name + "'.");
+
+        // copied, so the overflow offsets can be moved without changing the encoded struct
+        ByteBuffer fields = ByteBuffer.wrap(encoded.fields.clone());
+        try {
+            Integer existing = index.get(key);
+            int record;
+            if (existing != null) {
+                record = existing;
+            } else {
+                record = freeRecords.isEmpty() ? recordCount : freeRecords.peek();
+                ensureCapacity(record);
+            }
+            // the overflow data is written in one piece, and nothing points to it until the record is updated
+            if (encoded.overflow.length > 0) {
+                long base = overflow.size();
+                ByteBuffer buffer = ByteBuffer.wrap(encoded.overflow);
+                while (buffer.hasRemaining())
+                    overflow.write(buffer, base + buffer.position());
+                for (int slot = 0; slot < kinds.length; slot++) {
+                    int position = offsets[slot] - RECORD_FIELDS;
+                    if (kinds[slot] == VARIABLE && fields.getInt(position + 8) != 0)
+                        fields.putLong(position, base + fields.getLong(position));
+                }
+            }
+
+            ByteBuffer data = segment(record);
+            int position = position(record);
+            long released = existing == null ? 0 : overflowLength(data, position);
+            data.put(position + RECORD_FIELDS, fields.array());
+            garbage += released;
+            if (existing == null) {
+                if (record != recordCount)
+                    freeRecords.poll();
+                data.put(position + RECORD_KEY, (byte) keyBytes.length);
+                data.put(position + RECORD_KEY + 1, keyBytes);
+                data.put(position + RECORD_STATE, LIVE);
+                index.put(key, record);
+                if (record == recordCount)
+                    header.putInt(HEADER_RECORD_COUNT, ++recordCount);
+            }
+            header.putLong(HEADER_GARBAGE, garbage);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write struct '" + key + "' to store '" + name + "'", e);
+        }
+    }
+
+    /**
+     * A struct serialized for the layout of a store, see {@link #encode(Struct)}.
+     * Variable fields point at offsets in the encoded overflow data, which are moved when the struct is written.
+     */
+    static final class EncodedStruct {
+
+        private final StructStore store;
+        private final byte[] fields;
+        private final byte[] overflow;
+
+        private EncodedStruct(StructStore store, byte[] fields, byte[] overflow) {
+            this.store = store;
+            this.fields = fields;
+            this.overflow = overflow;
+        }
+
+    }
+
+    /**
+     * Removes the struct stored under a key.
+     *
+     * @param key The key of the struct.
+     * @return Whether a struct was removed.
+     */
+    public synchronized boolean remove(@NotNull String key) {
+        checkOpen();
+        Integer record = index.remove(key);
+        if (record == null)
+            return false;
+        ByteBuffer data = segment(record);
+        int position = position(record);
+        data.put(position + RECORD_STATE, FREE);
+        garbage += overflowLength(data, position);
+        header.putLong(HEADER_GARBAGE, garbage);
+        freeRecords.add(record);
+        return true;
+    }
+
+    /**
+     * Counts the overflow data a record points to, which becomes garbage once the record is changed or removed.
+     */
+    private long overflowLength(ByteBuffer data, int position) {
+        long length = 0;
+        for (int slot = 0; slot < kinds.length; slot++) {
+            if (kinds[slot] == VARIABLE)
+                length += data.getInt(position + offsets[slot] + 8);
+        }
+        return length;
+    }
+
+    private Object @Nullable [] readField(ByteBuffer buffer, int position, byte kind, Field<?> field) throws IOException {
+        return switch (kind) {
+            case DYNAMIC -> null;
+            case VARIABLE -> {
+                byte[] bytes = readOverflow(buffer, position);
+                yield bytes == null ? field.emptyValue() : StructSerializer.readValues(new DataInputStream(new ByteArrayInputStream(bytes)), field);
+            }
+            case INTEGER -> single(field, buffer.get(position) == 0 ? null : buffer.getLong(position + 1));
+            case DECIMAL -> single(field, buffer.get(position) == 0 ? null : buffer.getDouble(position + 1));
+            case NUMBER -> single(field, switch (buffer.get(position)) {
+                case 1 -> buffer.getLong(position + 1);
+                case 2 -> buffer.getDouble(position + 1);
+                default -> null;
+            });
+            case BOOLEAN -> single(field, switch (buffer.get(position)) {
+                case 1 -> false;
+                case 2 -> true;
+                default -> null;
+            });
+            default -> throw new IllegalStateException("Unknown field kind " + kind);
+        };
+    }
+
+    /**
+     * Reads the serialized values a variable field points to in the overflow file.
+     *
+     * @return The serialized values, or null if the field is empty.
+     */
+    private byte @Nullable [] readOverflow(ByteBuffer buffer, int position) throws IOException {
+        int length = buffer.getInt(position + 8);
+        if (length == 0)
+            return null;
+        ByteBuffer data = ByteBuffer.allocate(length);
+        long offset = buffer.getLong(position);
+        while (data.hasRemaining()) {
+            if (overflow.read(data, offset + data.position()) < 0)
+                throw new IOException("Unexpected end of overflow file");
+        }
+        return data.array();
+    }
+
+    /**
+     * Wraps an inline value in an array of the field's type, narrowing numbers to the field's exact type.
+     */
+    private static Object[] single(Field<?> field, @Nullable Object value) {
+        if (value == null)
+            return field.emptyValue();
+        Class<?> type = field.type().getC();
+        Object[] array = (Object[]) Array.newInstance(type, 1);
+        if (value instanceof Number number) {
+            if (type == Integer.class) {
+                value = number.intValue();
+            } else if (type == Short.class) {
+                value = number.shortValue();
+            } else if (type == Byte.class) {
+                value = number.byteValue();
+            } else if (type == Float.class) {
+                value = number.floatValue();
+            }
+        }
+        array[0] = value;
+        return array;
+    }
+
+    /**
+     * Reads an inline value into a field of a struct that's stored unboxed.
+     */
+    private static void readPrimitive(ByteBuffer buffer, int position, byte kind, Struct struct, int slot) {
+        byte tag = buffer.get(position);
+        if (tag == 0)
+            return;
+        switch (kind) {
+            case INTEGER -> struct.setPrimitive(slot, buffer.getLong(position + 1), false);
+            case DECIMAL -> struct.setPrimitive(slot, Double.doubleToLongBits(buffer.getDouble(position + 1)), false);
+            case NUMBER -> struct.setPrimitive(slot, tag == 2
+                    ? Double.doubleToLongBits(buffer.getDouble(position + 1))
+                    : buffer.getLong(position + 1), tag == 2);
+            case BOOLEAN -> struct.setPrimitive(slot, 0, tag == 2);
+            default -> throw new IllegalStateException("Unknown field kind " + kind);
+        }
+    }
+
+    /**
+     * Writes a field of a struct that's stored unboxed as an inline value, without boxing it.
+     */
+    private static void writePrimitive(ByteBuffer buffer, int position, byte kind, Struct struct, int slot) {
+        boolean present = struct.hasPrimitive(slot);
+        boolean flag = struct.getPrimitiveFlag(slot);
+        if (kind == BOOLEAN) {
+            buffer.put(position, (byte) (!present ? 0 : flag ? 2 : 1));
+            return;
+        }
+        // a double's word is its bits, so every kind can be written as a long
+        buffer.put(position, (byte) (!present ? 0 : kind == NUMBER && flag ? 2 : 1));
+        buffer.putLong(position + 1, struct.getPrimitiveWord(slot));
+    }
+
+    /**
+     * Writes a field's inline value. Variable values are serialized to the given overflow data instead, and the field
+     * is pointed at their offset in it, which must be moved to where the overflow data is written.
+     */
+    private static void writeField(ByteBuffer buffer, int position, byte kind, Object @Nullable [] values,
+                                   Set<Struct> parents, ByteArrayOutputStream overflowData) throws IOException {
+        Object value = values == null || values.length == 0 ? null : values[0];
+        switch (kind) {
+            case DYNAMIC -> {}
+            case VARIABLE -> {
+                // empty values don't need any overflow space
+                if (values == null || values.length == 0) {
+                    buffer.putLong(position, 0);
+                    buffer.putInt(position + 8, 0);
+                    return;
+                }
+                int offset = overflowData.size();
+                DataOutputStream out = new DataOutputStream(overflowData);
+                StructSerializer.writeValues(out, values, parents);
+                out.flush();
+                buffer.putLong(position, offset);
+                buffer.putInt(position + 8, overflowData.size() - offset);
+            }
+            case INTEGER -> {
+                buffer.put(position, (byte) (value == null ? 0 : 1));
+                buffer.putLong(position + 1, value == null ? 0 : ((Number) value).longValue());
+            }
+            case DECIMAL -> {
+                buffer.put(position, (byte) (value == null ? 0 : 1));
+                buffer.putDouble(position + 1, value == null ? 0 : ((Number) value).doubleValue());
+            }
+            case NUMBER -> {
+                if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    buffer.put(position, (byte) 1);
+                    buffer.putLong(position + 1, ((Number) value).longValue());
+                } else if (value instanceof Number number) {
+                    buffer.put(position, (byte) 2);
+                    buffer.putDouble(position + 1, number.doubleValue());
+                } else {
+                    buffer.put(position, (byte) 0);
+                }
+            }
+            case BOOLEAN -> buffer.put(position, (byte) (value == null ? 0 : (Boolean) value ? 2 : 1));
+            default -> throw new IllegalStateException("Unknown field kind " + kind);
+        }
+    }
+
+    /**
+     * Compacts the overflow file if worthwhile, and writes all changes to disk.
+     *
+     * @throws IOException if the changes could not be written.
+     */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        compact();
+        overflow.force(false);
+        forceRecords();
+    }
+
+    private void forceRecords() {
+        for (MappedByteBuffer segment : segments)
+            segment.force();
+        header.force();
+    }
+
+    /**
+     * Rewrites the overflow file without the data of removed or replaced values, if at least half of it is unused.
+     *
+     * @return Whether the overflow file was rewritten.
+     * @throws IOException if the overflow file could not be rewritten. If this happens before the journal is complete,
+     *                     the store is left unchanged. Otherwise, the store is closed, and finishes compacting when it's reopened.
+     */
+    public synchronized boolean compact() throws IOException {
+        checkOpen();
+        long size = overflow.size();
+        if (garbage < MIN_COMPACTION_GARBAGE || garbage * 2 < size)
+            return false;
+
+        long generation = overflowGeneration + 1;
+        Path compactedPath = overflowPath(generation);
+        Path journalPath = directory.resolve(JOURNAL);
+        FileChannel compacted = null;
+        try {
+            compacted = FileChannel.open(compactedPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try (FileChannel journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                CRC32 checksum = new CRC32();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(journal)), checksum));
+                out.writeLong(generation);
+                long newOffset = 0;
+                for (int record : index.values()) {
+                    ByteBuffer data = segment(record);
+                    int position = position(record);
+                    for (int slot = 0; slot < kinds.length; slot++) {
+                        if (kinds[slot] != VARIABLE)
+                            continue;
+                        int fieldPosition = position + offsets[slot];
+                        int length = data.getInt(fieldPosition + 8);
+                        if (length == 0)
+                            continue;
+                        long transferred = 0;
+                        long offset = data.getLong(fieldPosition);
+                        while (transferred < length)
+                            transferred += overflow.transferTo(offset + transferred, length - transferred, compacted);
+                        out.writeInt(record);
+                        out.writeInt(offsets[slot]);
+                        out.writeLong(newOffset);
+                        newOffset += length;
+                    }
+                }
+                out.writeInt(-1);
+                out.writeLong(checksum.getValue());
+                out.flush();
+                compacted.force(false);
+                journal.force(false);
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                if (compacted != null)
+                    compacted.close();
+                Files.deleteIfExists(journalPath);
+                Files.deleteIfExists(compactedPath);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        // the journal is complete, so an interrupted compaction is finished on the next open from here on
+        FileChannel previous = overflow;
+        Path previousPath = overflowPath(overflowGeneration);
+        overflow = compacted;
+        try {
+            if (!applyJournal(journalPath))
+                throw new IOException("The compaction journal of struct store '" + name + "' could not be read back.");
+        } catch (IOException | RuntimeException e) {
+            // some records may already point into the new file, so the store can't be used until it's reopened
+            closed = true;
+            records.close();
+            overflow.close();
+            previous.close();
+            throw e;
+        }
+        previous.close();
+        Files.delete(previousPath);
+        Files.delete(journalPath);
+        return true;
+    }
+
+    /**
+     * Compacts the overflow file if worthwhile, writes all changes to disk, and closes the store.
+     *
+     * @throws IOException if the store could not be written or closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            flush();
+        } finally {
+            closeFiles();
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        closed = true;
+        try {
+            records.close();
+        } finally {
+            overflow.close();
+            header = null;
+            segments.clear();
+        }
+    }
+
+    /**
+     * @return Whether this store has been closed.
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("Struct store '" + name + "' is closed.");
+    }
+
+    @Override
+    public String toString() {
+        return "struct store " + name;
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.sovdee.oopsk.core;
+
+import com.sovdee.oopsk.Oopsk;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Saves structs to and loads them from {@link StructStore}s on a background thread, so large saves don't block ticks.
+ * <br>
+ * Saving serializes the structs on the calling thread, which should be the main thread, via {@link StructStore#encode(Struct)},
+ * including any structs they hold. Only the serialized data is touched in the background, so scripts can keep changing
+ * the originals. Writes are flushed to disk
+ * in batches: once no more work is queued, or after {@value #MAX_BATCH} saves, whichever comes first.
+ * <br>
+ * The returned futures are completed on the main thread, so callbacks can safely use Bukkit and Skript. Loading reads
+ * structs in the background, but values whose types must be deserialized on the main thread are only deserialized
+ * when the future completes.
+ * A save completes once its structs have been flushed to disk, or fails with the exception that stopped them from being
+ * flushed. Work is done in the order it was submitted, so a load submitted after a save sees the saved structs.
+ */
+public class StructStoreIO {
+
+    private static final int MAX_BATCH = 64;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "oopsk struct store IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger queued = new AtomicInteger();
+
+    // only accessed from the executor thread
+    private final Map<StructStore, List<CompletableFuture<Void>>> unflushed = new LinkedHashMap<>();
+    private int unflushedCount;
+
+    /**
+     * Serializes the given structs, then writes them to a store in the background.
+     *
+     * @param store   The store to write to.
+     * @param structs The structs to save, by key.
+     * @return A future that completes on the main thread once the structs have been written and flushed to disk,
+     *         or exceptionally if they could not be.
+     */
+    public CompletableFuture<Void> save(@NotNull StructStore store, @NotNull Map<String, Struct> structs) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        // serialize now, nested structs included, so later changes by scripts don't race with the background write
+        Map<String, StructStore.EncodedStruct> snapshot = new LinkedHashMap<>(structs.size());
+        try {
+            for (Map.Entry<String, Struct> entry : structs.entrySet()) {
+                Struct struct = entry.getValue();
+                // the store only accepts the current layout of its template
+                struct.migrateIfRetired();
+                snapshot.put(entry.getKey(), store.encode(struct));
+            }
+        } catch (RuntimeException e) {
+            failOnMainThread(future, e);
+            return future;
+        }
+
+        submit(future, () -> {
+            for (Map.Entry<String, StructStore.EncodedStruct> entry : snapshot.entrySet())
+                store.put(entry.getKey(), entry.getValue());
+            unflushed.computeIfAbsent(store, key -> new ArrayList<>()).add(future);
+            unflushedCount++;
+        });
+        return future;
+    }
+
+    /**
+     * Reads structs from a store in the background.
+     *
+     * @param store The store to read from.
+     * @param keys  The keys of the structs to read.
+     * @return A future that completes on the main thread with the structs that were found, by key.
+     */
+    public CompletableFuture<Map<String, Struct>> load(@NotNull StructStore store, @NotNull Collection<String> keys) {
+        List<String> keysCopy = List.copyOf(keys);
+        CompletableFuture<Map<String, Struct>> future = new CompletableFuture<>();
+        submit(future, () -> {
+            Map<String, StructStore.PendingStruct> pending = new LinkedHashMap<>(keysCopy.size());
+            for (String key : keysCopy) {
+                StructStore.PendingStruct struct = store.getPending(key);
+                if (struct != null)
+                    pending.put(key, struct);
+            }
+            // values that must be deserialized on the main thread are left for the completion
+            completeOnMainThread(future, () -> finish(store, pending));
+        });
+        return future;
+    }
+
+    private static Map<String, Struct> finish(StructStore store, Map<String, StructStore.PendingStruct> pending) {
+        Map<String, Struct> structs = new LinkedHashMap<>(pending.size());
+        for (Map.Entry<String, StructStore.PendingStruct> entry : pending.entrySet()) {
+            Struct struct;
+            try {
+                struct = entry.getValue().finish();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read struct '" + entry.getKey() + "' from " + store, e);
+            }
+            if (Oopsk.getStructManager() != null)
+                Oopsk.getStructManager().registerStruct(struct, struct.getTemplate());
+            structs.put(entry.getKey(), struct);
+        }
+        return structs;
+    }
+
+    private void submit(CompletableFuture<?> future, Runnable work) {
+        queued.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                failOnMainThread(future, e);
+            }
+            // flush once the queue is drained, or if the batch is getting large
+            if (queued.decrementAndGet() == 0 || unflushedCount >= MAX_BATCH)
+                flush();
+        });
+    }
+
+    private void flush() {
+        for (Map.Entry<StructStore, List<CompletableFuture<Void>>> entry : unflushed.entrySet()) {
+            StructStore store = entry.getKey();
+            try {
+                store.flush();
+            } catch (IOException | IllegalStateException e) {
+                Oopsk.warning("Failed to flush " + store + ": " + e.getMessage());
+                // the saves may not have reached the disk, so they fail with the reason why
+                for (CompletableFuture<Void> future : entry.getValue())
+                    failOnMainThread(future, e);
+                continue;
+            }
+            for (CompletableFuture<Void> future : entry.getValue())
+                completeOnMainThread(future, () -> null);
+        }
+        unflushed.clear();
+        unflushedCount = 0;
+    }
+
+    private static <T> void completeOnMainThread(CompletableFuture<T> future, Supplier<T> value) {
+        Oopsk plugin = Oopsk.getInstance();
+        if (plugin == null || !plugin.isEnabled()) {
+            complete(future, value);
+            return;
+        }
+        Bukkit.getScheduler().runTask(plugin, () -> complete(future, value));
+    }
+
+    private static <T> void complete(CompletableFuture<T> future, Supplier<T> value) {
+        T result;
+        try {
+            result = value.get();
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return;
+        }
+        future.complete(result);
+    }
+
+    private static void failOnMainThread(CompletableFuture<?> future, Throwable throwable) {
+        Oopsk plugin = Oopsk.getInstance();
+        if (plugin == null || !plugin.isEnabled()) {
+            future.completeExceptionally(throwable);
+            return;
+        }
+        Bukkit.getScheduler().runTask(plugin, () -> future.completeExceptionally(throwable));
+    }
+
+    /**
+     * Finishes all queued work, then stops the background thread.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+                Oopsk.warning("Timed out waiting for struct stores to finish saving.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.sovdee.oopsk.core;
+
+import com.sovdee.oopsk.Oopsk;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * StructStoreManager keeps track of the open {@link StructStore}s. Each store lives in its own directory,
+ * named after the store, inside the manager's directory. Characters other than letters, digits, underscores and dashes
+ * are replaced with underscores in directory names, so two stores whose names only differ in those characters can't
+ * be open at the same time.
+ */
+public class StructStoreManager {
+
+    private final Path directory;
+    private final Map<String, StructStore> stores = new ConcurrentHashMap<>();
+    // names of the open stores, by directory name. Guarded by this
+    private final Map<String, String> namesByDirectory = new HashMap<>();
+
+    /**
+     * @param directory The directory to keep stores in.
+     */
+    public StructStoreManager(@NotNull Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens a store, creating it if it doesn't exist. If the store is already open, the open store is returned.
+     *
+     * @param name     The name of the store. Case insensitive.
+     * @param template The template of the structs in the store.
+     * @return The open store.
+     * @throws IOException if the store could not be opened.
+     * @throws IllegalStateException if the store is already open for a different template, or another open store
+     *                               uses the same directory.
+     */
+    public synchronized @NotNull StructStore open(@NotNull String name, @NotNull StructTemplate template) throws IOException {
+        name = name.toLowerCase(Locale.ENGLISH);
+        StructStore store = stores.get(name);
+        if (store != null) {
+            if (!store.getTemplate().getName().equals(template.getName()))
+                throw new IllegalStateException("Struct store '" + name + "' is already open for " + store.getTemplate().getName() + " structs.");
+            return store;
+        }
+        String directoryName = name.replaceAll("[^a-z0-9_-]", "_");
+        String other = namesByDirectory.get(directoryName);
+        if (other != null)
+            throw new IllegalStateException("Struct store '" + name + "' would use the same files as the open struct store '" + other + "'.");
+        store = StructStore.open(name, directory.resolve(directoryName), template);
+        stores.put(name, store);
+        namesByDirectory.put(directoryName, name);
+        return store;
+    }
+
+    /**
+     * @param name The name of the store. Case insensitive.
+     * @return The open store, or null if it isn't open.
+     */
+    public @Nullable StructStore getStore(@NotNull String name) {
+        return stores.get(name.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Closes a store, if it's open.
+     *
+     * @param name The name of the store. Case insensitive.
+     * @throws IOException if the store could not be written or closed.
+     */
+    public synchronized void close(@NotNull String name) throws IOException {
+        StructStore store = stores.remove(name.toLowerCase(Locale.ENGLISH));
+        if (store == null)
+            return;
+        namesByDirectory.values().remove(store.getName());
+        store.close();
+    }
+
+    /**
+     * Closes all open stores, logging any errors.
+     */
+    public synchronized void closeAll() {
+        for (StructStore store : stores.values()) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                Oopsk.severe("Failed to close " + store + ": " + e.getMessage());
+            }
+        }
+        stores.clear();
+        namesByDirectory.clear();
+    }
+
+}
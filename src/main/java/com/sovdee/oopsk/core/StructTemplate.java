@@ -1,20 +1,43 @@
 package com.sovdee.oopsk.core;
 
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.metrics.TemplateMetrics;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
 
-import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A struct template contains a collection of typed fields.
+ * Each field is assigned a stable slot, its index in declaration order, which structs use to store their values.
  */
 public class StructTemplate {
     private final String name;
     private final Map<String, Field<?>> fields;
+    private final Field<?>[] slots;
+    private int[][] cachedDependents;
+    private final PrimitiveKind[] primitiveKinds;
+    private final int[] primitiveBits;
+    private final int[] primitiveWords;
+    private final int primitiveWordCount;
     private final Class<? extends Struct> customClass;
+    private final StructFactory factory;
+    private final boolean tracked;
+    private final TemplateMetrics metrics;
+    private final long schemaHash;
+    private volatile boolean retired;
+    // retired, and not known to have no replacement, see TemplateManager#markOrphaned
+    private volatile boolean migratable;
+    private volatile boolean dataLossWarned;
 
     /**
      * Creates a new struct template with the given name and fields.
@@ -23,12 +46,47 @@ public class StructTemplate {
      * @param fields The fields of the template.
      */
     public StructTemplate(String name, @NotNull List<Field<?>> fields, Class<? extends Struct> customClass) {
+        this(name, fields, customClass, true);
+    }
+
+    /**
+     * Creates a new struct template with the given name and fields.
+     *
+     * @param name    The name of the template.
+     * @param fields  The fields of the template.
+     * @param tracked Whether structs of this template are registered with the {@link StructManager}.
+     *                Untracked structs are migrated lazily when they are next accessed after a reload.
+     */
+    public StructTemplate(String name, @NotNull List<Field<?>> fields, Class<? extends Struct> customClass, boolean tracked) {
         this.name = name;
+        this.tracked = tracked;
         this.customClass = customClass;
+        this.factory = new StructFactory(customClass != null ? customClass : Struct.class);
+        this.metrics = Oopsk.getMetrics().forTemplate(name);
         this.fields = new HashMap<>();
-        for (Field<?> field : fields) {
+        this.slots = fields.toArray(new Field<?>[0]);
+        this.cachedDependents = new int[slots.length][0];
+        for (int slot = 0; slot < slots.length; slot++) {
+            Field<?> field = slots[slot];
+            field.slot(slot);
             this.fields.put(field.name(), field);
         }
+        this.schemaHash = computeSchemaHash(slots);
+
+        // single number and boolean fields are stored unboxed. Each takes a bit of the struct's presence and flag masks,
+        // so only the first 64 are, and the rest are stored as arrays
+        this.primitiveKinds = new PrimitiveKind[slots.length];
+        this.primitiveBits = new int[slots.length];
+        this.primitiveWords = new int[slots.length];
+        int bits = 0;
+        int words = 0;
+        for (int slot = 0; slot < slots.length; slot++) {
+            PrimitiveKind kind = bits < Long.SIZE ? PrimitiveKind.of(slots[slot]) : null;
+            primitiveKinds[slot] = kind;
+            primitiveBits[slot] = kind == null ? -1 : bits++;
+            primitiveWords[slot] = kind == null || !kind.usesWord() ? -1 : words++;
+        }
+        this.primitiveWordCount = words;
     }
 
     /**
@@ -45,23 +103,231 @@ public class StructTemplate {
         return customClass;
     }
 
+    /**
+     * @return The factory used to create instances of this template's custom class.
+     */
+    StructFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * @return The metrics of this template. These are shared with all other templates of the same name.
+     */
+    public TemplateMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return Whether structs of this template are registered with the {@link StructManager}.
+     */
+    public boolean isTracked() {
+        return tracked;
+    }
+
+    /**
+     * @return Whether this template has been removed from the {@link TemplateManager}.
+     */
+    public boolean isRetired() {
+        return retired;
+    }
+
+    /**
+     * Marks this template as removed. Retired templates never become active again; a reload creates a new template.
+     */
+    void retire() {
+        retired = true;
+        migratable = true;
+    }
+
+    /**
+     * @return Whether structs of this template should try to update to a template of the same name.
+     *         False for active templates, and for retired ones that were found to have no replacement.
+     */
+    boolean isMigratable() {
+        return migratable;
+    }
+
+    /**
+     * Sets whether this retired template has no replacement, so its structs stop looking for one on every access.
+     *
+     * @param orphaned Whether no template of the same name is loaded.
+     * @see TemplateManager#markOrphaned(StructTemplate)
+     */
+    void setOrphaned(boolean orphaned) {
+        migratable = retired && !orphaned;
+    }
+
+    /**
+     * Logs a warning that existing structs lost data while being updated to this template. Only warns once per template.
+     */
+    void warnMigrationDataLoss() {
+        if (dataLossWarned)
+            return;
+        dataLossWarned = true;
+        Oopsk.warning("Existing structs of template '" + name + "' have had their fields modified to match the new template. This may have caused data loss.");
+    }
+
     /**
      * Parses all the default value expressions for this struct. Prints errors.
      * @return true if no errors were encountered. False otherwise.
      */
     public boolean parseFields() {
-        for (Field<?> field : fields.values()) {
+        for (Field<?> field : slots) {
             if (!field.parseDefaultValueExpression())
                 return false;
         }
+        computeCachedDependents();
         return true;
     }
 
     /**
-     * @return The fields of this template. Unmodifiable.
+     * Builds the table of cached dynamic fields to invalidate when each slot changes.
+     * Invalidation is transitive, so cached fields that depend on other dynamic fields, cached or not, are included.
+     */
+    private void computeCachedDependents() {
+        // direct dependents of each slot. Plain dynamic fields are nodes too, so chains through them aren't broken
+        List<List<Integer>> direct = new ArrayList<>(slots.length);
+        for (int slot = 0; slot < slots.length; slot++)
+            direct.add(new ArrayList<>());
+        for (int slot = 0; slot < slots.length; slot++) {
+            Field<?> field = slots[slot];
+            if (!field.dynamic())
+                continue;
+            for (String dependency : field.dependencies()) {
+                Field<?> dependencyField = fields.get(dependency);
+                if (dependencyField != null)
+                    direct.get(dependencyField.slot()).add(slot);
+            }
+        }
+        // walk the graph from each slot to find all transitive dependents
+        int[][] dependents = new int[slots.length][];
+        for (int slot = 0; slot < slots.length; slot++) {
+            Set<Integer> found = new LinkedHashSet<>();
+            Deque<Integer> toVisit = new ArrayDeque<>(direct.get(slot));
+            while (!toVisit.isEmpty()) {
+                int dependent = toVisit.pop();
+                if (found.add(dependent))
+                    toVisit.addAll(direct.get(dependent));
+            }
+            // only cached fields store a value to discard
+            dependents[slot] = found.stream().mapToInt(Integer::intValue).filter(dependent -> slots[dependent].cached()).toArray();
+        }
+        this.cachedDependents = dependents;
+    }
+
+    /**
+     * Gets the slots of the cached dynamic fields whose values must be discarded when the given slot changes.
+     * @param slot The slot that changed.
+     * @return The slots of all cached fields that depend on it, directly or indirectly.
+     */
+    int[] getCachedDependents(int slot) {
+        return cachedDependents[slot];
+    }
+
+    /**
+     * @param slot The slot of a field.
+     * @return How the field's value is stored unboxed, or null if it's stored as an array.
+     */
+    PrimitiveKind getPrimitiveKind(int slot) {
+        return primitiveKinds[slot];
+    }
+
+    /**
+     * @param slot The slot of a field stored unboxed.
+     * @return The bit of the struct's presence and flag masks used by the field.
+     */
+    int getPrimitiveBit(int slot) {
+        return primitiveBits[slot];
+    }
+
+    /**
+     * @param slot The slot of a field stored unboxed.
+     * @return The index of the field's word in the struct's primitive values, or -1 if it only uses a flag.
+     */
+    int getPrimitiveWord(int slot) {
+        return primitiveWords[slot];
+    }
+
+    /**
+     * @return The number of words in each struct's primitive values.
+     */
+    int getPrimitiveWordCount() {
+        return primitiveWordCount;
+    }
+
+    /**
+     * A fingerprint of this template's layout: the name, type, plurality and modifiers of each field, in slot order.
+     * Templates with the same fingerprint store their values identically, so saved structs can be loaded into them directly.
+     * The fingerprint is stable across restarts.
+     *
+     * @return The schema fingerprint.
+     */
+    public long getSchemaHash() {
+        return schemaHash;
+    }
+
+    /**
+     * Computes a 64-bit FNV-1a hash of the layout of the given fields.
+     * @param fields The fields, in slot order.
+     * @return The hash.
+     */
+    static long computeSchemaHash(Field<?>[] fields) {
+        StringBuilder layout = new StringBuilder();
+        for (Field<?> field : fields) {
+            layout.append(field.name()).append(':').append(field.type().getCodeName())
+                    .append(field.single() ? '1' : 'n');
+            for (Field.Modifier modifier : Field.Modifier.values()) {
+                if (field.modifiers().contains(modifier))
+                    layout.append(modifier.ordinal());
+            }
+            layout.append(';');
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < layout.length(); i++) {
+            hash ^= layout.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return The fields of this template, in slot order. Unmodifiable.
+     */
+    public @Unmodifiable List<Field<?>> getFields() {
+        return Collections.unmodifiableList(Arrays.asList(slots));
+    }
+
+    /**
+     * @return The number of fields, and therefore slots, in this template.
+     */
+    public int getFieldCount() {
+        return slots.length;
+    }
+
+    /**
+     * Gets the field occupying the given slot.
+     * @param slot The slot of the field.
+     * @return The field in that slot.
+     */
+    public Field<?> getField(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * Gets the slot of a field in this template.
+     * Fields belonging to this template resolve without any lookup. Other fields are matched by name and must be
+     * {@link Field#equals(Object) equal} to the field in this template.
+     * @param field The field to find the slot of.
+     * @return The slot of the field, or -1 if this template has no matching field.
      */
-    public Collection<Field<?>> getFields() {
-        return Collections.unmodifiableCollection(fields.values());
+    public int getSlot(@NotNull Field<?> field) {
+        int slot = field.slot();
+        if (slot >= 0 && slot < slots.length && slots[slot] == field)
+            return slot;
+        Field<?> own = fields.get(field.name());
+        if (own == null || !own.equals(field))
+            return -1;
+        return own.slot();
     }
 
     /**
@@ -1,6 +1,7 @@
 package com.sovdee.oopsk.core;
 
 import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.jmx.OopskMBeans;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Unmodifiable;
 
@@ -9,16 +10,21 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.function.Predicate;
 
 /**
  * TemplateManager is responsible for managing struct templates.
  * It allows adding, removing, and retrieving templates, as well as finding fields matching a given predicate.
+ * Lookups are lock-free and may happen on any thread. Changes are made on copies of the lookup maps, which are then
+ * published as a whole, so readers always see a consistent set of templates.
  */
 public class TemplateManager {
 
-    private final Map<String, StructTemplate> templates = new HashMap<>();
-    private final Map<Class<? extends Struct>, StructTemplate> templatesByClass = new HashMap<>();
+    private volatile Map<String, StructTemplate> templates = Map.of();
+    private volatile Map<Class<? extends Struct>, StructTemplate> templatesByClass = Map.of();
+    // retired templates found to have no replacement, by name. Guarded by this
+    private final Map<String, Set<StructTemplate>> orphanedTemplates = new HashMap<>();
 
     /**
      * Adds a new template to the manager. Attempts to reparent all orphaned structs that match this template's name.
@@ -27,12 +33,25 @@ public class TemplateManager {
      * @return True if the template was added successfully, false if a template with the same name already exists.
      */
     public boolean addTemplate(@NotNull StructTemplate template) {
-        if (templates.containsKey(template.getName()))
-            return false; // Template with the same name already exists
-        templates.put(template.getName(), template);
-        templatesByClass.put(template.getCustomClass(), template);
+        synchronized (this) {
+            if (templates.containsKey(template.getName()))
+                return false; // Template with the same name already exists
+            Map<String, StructTemplate> newTemplates = new HashMap<>(templates);
+            newTemplates.put(template.getName(), template);
+            Map<Class<? extends Struct>, StructTemplate> newTemplatesByClass = new HashMap<>(templatesByClass);
+            newTemplatesByClass.put(template.getCustomClass(), template);
+            templates = Collections.unmodifiableMap(newTemplates);
+            templatesByClass = Collections.unmodifiableMap(newTemplatesByClass);
+            // structs of older templates of this name can update to this one now
+            Set<StructTemplate> orphaned = orphanedTemplates.remove(template.getName());
+            if (orphaned != null)
+                orphaned.forEach(retired -> retired.setOrphaned(false));
+        }
         // reparent all orphaned structs of this template
         Oopsk.getStructManager().reparentStructs(template);
+        OopskMBeans mBeans = Oopsk.getMBeans();
+        if (mBeans != null)
+            mBeans.registerTemplate(template.getName());
         return true; // Template added successfully
     }
 
@@ -63,14 +82,36 @@ public class TemplateManager {
      */
     public void removeTemplate(@NotNull StructTemplate template) {
         String name = template.getName();
-        if (!templates.containsKey(name))
-            return; // Template with the given name does not exist
-        templates.remove(name);
-        templatesByClass.remove(template.getCustomClass());
+        synchronized (this) {
+            if (templates.get(name) != template)
+                return; // Template with the given name does not exist
+            Map<String, StructTemplate> newTemplates = new HashMap<>(templates);
+            newTemplates.remove(name);
+            Map<Class<? extends Struct>, StructTemplate> newTemplatesByClass = new HashMap<>(templatesByClass);
+            newTemplatesByClass.remove(template.getCustomClass());
+            templates = Collections.unmodifiableMap(newTemplates);
+            templatesByClass = Collections.unmodifiableMap(newTemplatesByClass);
+        }
+        template.retire();
         // mark all structs of this template as orphaned
         Oopsk.getStructManager().orphanStructs(template);
     }
 
+    /**
+     * Marks a retired template as having no replacement, unless a template of the same name has been added since.
+     * Its structs then skip looking for a replacement on every access, until {@link #addTemplate(StructTemplate)} adds one.
+     *
+     * @param template The retired template.
+     */
+    synchronized void markOrphaned(@NotNull StructTemplate template) {
+        if (templates.containsKey(template.getName()))
+            return;
+        template.setOrphaned(true);
+        // held weakly, so templates are dropped once none of their structs remain
+        orphanedTemplates.computeIfAbsent(template.getName(), k -> Collections.newSetFromMap(new WeakHashMap<>()))
+                .add(template);
+    }
+
     /**
      * Retrieves all templates managed by this manager.
      *
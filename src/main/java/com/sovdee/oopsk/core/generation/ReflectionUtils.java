@@ -137,11 +137,18 @@ public class ReflectionUtils {
         sortClassInfosMethod.invoke(null);
     }
 
+    /**
+     * @param name The name of a struct template.
+     * @return The code name of the template's type.
+     */
+    public static String getCodeName(String name) {
+        return (name.toLowerCase(Locale.ENGLISH) + "struct").replaceAll("_", "underscore");
+    }
+
     public static ClassInfo<? extends Struct> addClassInfo(Class<? extends Struct> customClass, String name) {
 
         // get the classinfo if it exists
-        String codeName = name.toLowerCase(Locale.ENGLISH) + "struct";
-        codeName = codeName.replaceAll("_", "underscore");
+        String codeName = getCodeName(name);
 
         //noinspection unchecked
         ClassInfo<? extends Struct> customClassInfo = (ClassInfo<? extends Struct>) Classes.getClassInfoNoError(codeName);
@@ -168,8 +175,10 @@ public class ReflectionUtils {
         }
 
         addLanguageNode("types." + codeName , name + " struct");
+        // custom types are registered when scripts load, which is after variables are loaded, so save them as plain structs
         customClassInfo = new ClassInfo<>(customClass, codeName)
-                .user(name + " structs?( types?)?");
+                .user(name + " structs?( types?)?")
+                .serializeAs(Struct.class);
 
         enableRegistrations();
         Classes.registerClass(customClassInfo);
@@ -2,6 +2,8 @@ package com.sovdee.oopsk.core.generation;
 
 import com.sovdee.oopsk.core.Struct;
 import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.modifier.TypeManifestation;
+import net.bytebuddy.description.modifier.Visibility;
 import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
 
 import java.net.URL;
@@ -26,12 +28,35 @@ public class TemporaryClassManager {
         );
     }
 
-    public Class<?> createTemporarySubclass(String name) {
+    /**
+     * Gets (or creates) the subclass of {@link Struct} for the template with the given name.
+     * This is the same class the template itself will use once it is loaded, so structs created before then,
+     * such as ones loaded from variables, already have the right type.
+     *
+     * @param templateName The name of the template.
+     * @return The subclass for the template.
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends Struct> getStructClass(String templateName) {
+        return (Class<? extends Struct>) createTemporarySubclass("Struct_" + templateName.replaceAll("[^a-zA-Z0-9_]", "_"));
+    }
+
+    /**
+     * Creates (or reuses) the subclass of {@link Struct} used as the type identity of a template.
+     * The class is reused across template reloads so existing structs and registered types stay compatible,
+     * which is why it carries no per-field state of its own: values live in the slots assigned by the template.
+     * The class is generated as final so the JIT can treat type checks and calls on it as monomorphic.
+     *
+     * @param name The name of the class.
+     * @return The generated class.
+     */
+    public synchronized Class<?> createTemporarySubclass(String name) {
         if (createdClasses.containsKey(name)) {
             return createdClasses.get(name);
         }
         var c = new ByteBuddy()
                 .subclass(Struct.class)
+                .modifiers(Visibility.PUBLIC, TypeManifestation.FINAL)
                 .name(name)
                 .make()
                 .load(disposableClassLoader, ClassLoadingStrategy.Default.WRAPPER)
@@ -0,0 +1,84 @@
+package com.sovdee.oopsk.core.jmx;
+
+import com.sovdee.oopsk.Oopsk;
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registers oopsk's MBeans with the platform MBean server, so templates and struct registries can be monitored over JMX.
+ * One bean describes oopsk as a whole, and one bean is registered for each template name the first time it's loaded.
+ * Template beans stay registered across reloads until oopsk is disabled.
+ */
+public class OopskMBeans {
+
+    private static final String DOMAIN = "com.sovdee.oopsk";
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final Map<String, ObjectName> templateBeans = new ConcurrentHashMap<>();
+    private ObjectName structsBean;
+
+    /**
+     * Registers the bean for oopsk as a whole.
+     */
+    public void register() {
+        try {
+            structsBean = new ObjectName(DOMAIN + ":type=Structs");
+            register(new StructsBean(), structsBean);
+        } catch (JMException e) {
+            Oopsk.warning("Failed to register oopsk's MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registers the bean for a template name, if it is not registered already.
+     *
+     * @param name The name of the template.
+     */
+    public void registerTemplate(@NotNull String name) {
+        templateBeans.computeIfAbsent(name, key -> {
+            try {
+                ObjectName objectName = new ObjectName(DOMAIN + ":type=Template,name=" + ObjectName.quote(key));
+                register(new TemplateBean(key), objectName);
+                return objectName;
+            } catch (JMException e) {
+                Oopsk.warning("Failed to register the MBean for template '" + key + "': " + e.getMessage());
+                return null;
+            }
+        });
+    }
+
+    private void register(Object bean, ObjectName objectName) throws JMException {
+        // a previous instance of oopsk may not have cleaned up, for example after a failed disable
+        if (server.isRegistered(objectName))
+            server.unregisterMBean(objectName);
+        server.registerMBean(bean, objectName);
+    }
+
+    /**
+     * Unregisters all of oopsk's beans.
+     */
+    public void unregisterAll() {
+        for (ObjectName objectName : templateBeans.values())
+            unregister(objectName);
+        templateBeans.clear();
+        if (structsBean != null)
+            unregister(structsBean);
+        structsBean = null;
+    }
+
+    private void unregister(ObjectName objectName) {
+        try {
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            Oopsk.warning("Failed to unregister MBean " + objectName + ": " + e.getMessage());
+        }
+    }
+
+}
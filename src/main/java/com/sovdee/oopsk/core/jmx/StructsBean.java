@@ -0,0 +1,75 @@
+package com.sovdee.oopsk.core.jmx;
+
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.StructManager;
+import com.sovdee.oopsk.core.StructTemplate;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Exposes oopsk's templates and struct registries over JMX.
+ */
+class StructsBean implements StructsMXBean {
+
+    @Override
+    public String[] getTemplateNames() {
+        return Oopsk.getTemplateManager().getTemplates().stream()
+                .map(StructTemplate::getName)
+                .sorted()
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public int getLiveInstances() {
+        return Oopsk.getStructManager().getActiveCounts().values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Override
+    public int getOrphanedInstances() {
+        return Oopsk.getStructManager().getOrphanedCounts().values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Override
+    public Map<String, Integer> getOrphanedInstancesByTemplate() {
+        return Oopsk.getStructManager().getOrphanedCounts();
+    }
+
+    @Override
+    public long getEstimatedRetainedBytes() {
+        StructManager structManager = Oopsk.getStructManager();
+        Set<String> names = new HashSet<>(structManager.getActiveCounts().keySet());
+        names.addAll(structManager.getOrphanedCounts().keySet());
+        long size = 0;
+        for (String name : names)
+            size += structManager.estimateRetainedBytes(name);
+        return size;
+    }
+
+    @Override
+    public boolean isMetricsEnabled() {
+        return Oopsk.getMetrics().isEnabled();
+    }
+
+    @Override
+    public void setMetricsEnabled(boolean enabled) {
+        Oopsk.getMetrics().setEnabled(enabled);
+    }
+
+    @Override
+    public int clearOrphans() {
+        return Oopsk.getStructManager().clearOrphans();
+    }
+
+    @Override
+    public void expungeCollected() {
+        Oopsk.getStructManager().expungeCollected();
+    }
+
+    @Override
+    public void resetMetrics() {
+        Oopsk.getMetrics().reset();
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.sovdee.oopsk.core.jmx;
+
+import java.util.Map;
+
+/**
+ * The management interface for oopsk as a whole, registered as {@code com.sovdee.oopsk:type=Structs}.
+ */
+public interface StructsMXBean {
+
+    /**
+     * @return The names of all loaded templates.
+     */
+    String[] getTemplateNames();
+
+    /**
+     * @return The number of tracked structs of loaded templates.
+     */
+    int getLiveInstances();
+
+    /**
+     * @return The number of tracked structs whose templates have been removed and not reloaded.
+     */
+    int getOrphanedInstances();
+
+    /**
+     * @return The number of orphaned structs, by template name.
+     */
+    Map<String, Integer> getOrphanedInstancesByTemplate();
+
+    /**
+     * @return The estimated heap retained by all tracked structs, in bytes. Walks every struct.
+     */
+    long getEstimatedRetainedBytes();
+
+    /**
+     * @return Whether struct metrics are being collected.
+     */
+    boolean isMetricsEnabled();
+
+    /**
+     * @param enabled Whether to collect struct metrics.
+     */
+    void setMetricsEnabled(boolean enabled);
+
+    /**
+     * Stops tracking all orphaned structs.
+     *
+     * @return The number of structs that are no longer tracked.
+     */
+    int clearOrphans();
+
+    /**
+     * Removes the entries of garbage collected structs from all registries.
+     */
+    void expungeCollected();
+
+    /**
+     * Resets all struct metrics.
+     */
+    void resetMetrics();
+
+}
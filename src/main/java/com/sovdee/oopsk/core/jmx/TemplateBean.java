@@ -0,0 +1,113 @@
+package com.sovdee.oopsk.core.jmx;
+
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.StructTemplate;
+import com.sovdee.oopsk.core.metrics.StructMetrics.TemplateSnapshot;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Exposes a template name over JMX. Looks up the loaded template on every call.
+ */
+class TemplateBean implements TemplateMXBean {
+
+    private final String name;
+
+    TemplateBean(String name) {
+        this.name = name;
+    }
+
+    private @Nullable StructTemplate template() {
+        return Oopsk.getTemplateManager().getTemplate(name);
+    }
+
+    private TemplateSnapshot counters() {
+        TemplateSnapshot snapshot = Oopsk.getMetrics().snapshot(null).templates().get(name);
+        return snapshot != null ? snapshot : new TemplateSnapshot(name, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return template() != null;
+    }
+
+    @Override
+    public boolean isTracked() {
+        StructTemplate template = template();
+        return template != null && template.isTracked();
+    }
+
+    @Override
+    public String[] getFieldLayout() {
+        StructTemplate template = template();
+        if (template == null)
+            return new String[0];
+        List<?> fields = template.getFields();
+        String[] layout = new String[fields.size()];
+        for (int slot = 0; slot < layout.length; slot++)
+            layout[slot] = slot + ": " + fields.get(slot);
+        return layout;
+    }
+
+    @Override
+    public int getLiveInstances() {
+        return Oopsk.getStructManager().getActiveCounts().getOrDefault(name, 0);
+    }
+
+    @Override
+    public int getOrphanedInstances() {
+        return Oopsk.getStructManager().getOrphanedCounts().getOrDefault(name, 0);
+    }
+
+    @Override
+    public long getEstimatedRetainedBytes() {
+        return Oopsk.getStructManager().estimateRetainedBytes(name);
+    }
+
+    @Override
+    public int getPendingMigrations() {
+        return Oopsk.getStructManager().countPendingMigrations(name);
+    }
+
+    @Override
+    public long getMigrations() {
+        return counters().migrations();
+    }
+
+    @Override
+    public long getMigrationNanos() {
+        return counters().migrationNanos();
+    }
+
+    @Override
+    public long getCreated() {
+        return counters().created();
+    }
+
+    @Override
+    public long getFieldReads() {
+        return counters().fieldReads();
+    }
+
+    @Override
+    public long getFieldWrites() {
+        return counters().fieldWrites();
+    }
+
+    @Override
+    public long getDynamicEvaluations() {
+        return counters().dynamicEvaluations();
+    }
+
+    @Override
+    public int clearOrphans() {
+        return Oopsk.getStructManager().clearOrphans(name);
+    }
+
+}
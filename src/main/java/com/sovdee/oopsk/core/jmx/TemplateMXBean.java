@@ -0,0 +1,86 @@
+package com.sovdee.oopsk.core.jmx;
+
+/**
+ * The management interface for a single template name, registered as {@code com.sovdee.oopsk:type=Template,name="<name>"}.
+ * Attributes always describe the currently loaded template of that name, so the bean survives reloads.
+ */
+public interface TemplateMXBean {
+
+    /**
+     * @return The name of the template.
+     */
+    String getName();
+
+    /**
+     * @return Whether a template of this name is currently loaded.
+     */
+    boolean isLoaded();
+
+    /**
+     * @return Whether structs of this template are tracked. Untracked structs are not counted by any other attribute.
+     */
+    boolean isTracked();
+
+    /**
+     * @return The fields of the template, one per slot, in the format {@code <slot>: <field>}.
+     */
+    String[] getFieldLayout();
+
+    /**
+     * @return The number of tracked structs of the loaded template.
+     */
+    int getLiveInstances();
+
+    /**
+     * @return The number of tracked structs of this name whose template has been removed and not reloaded.
+     */
+    int getOrphanedInstances();
+
+    /**
+     * @return The estimated heap retained by the tracked structs of this name, in bytes. Walks every struct.
+     */
+    long getEstimatedRetainedBytes();
+
+    /**
+     * @return The number of tracked structs that have not yet been updated to the loaded template. Walks every struct.
+     */
+    int getPendingMigrations();
+
+    /**
+     * @return The number of structs that have been updated to a reloaded template.
+     */
+    long getMigrations();
+
+    /**
+     * @return The total time spent updating structs to reloaded templates, in nanoseconds.
+     */
+    long getMigrationNanos();
+
+    /**
+     * @return The number of structs created.
+     */
+    long getCreated();
+
+    /**
+     * @return The number of field reads through field access expressions.
+     */
+    long getFieldReads();
+
+    /**
+     * @return The number of field changes through field access expressions.
+     */
+    long getFieldWrites();
+
+    /**
+     * @return The number of dynamic field evaluations.
+     */
+    long getDynamicEvaluations();
+
+    /**
+     * Stops tracking the orphaned structs of this name.
+     *
+     * @return The number of structs that are no longer tracked.
+     */
+    int clearOrphans();
+
+}
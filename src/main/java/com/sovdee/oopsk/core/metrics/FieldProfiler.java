@@ -0,0 +1,193 @@
+package com.sovdee.oopsk.core.metrics;
+
+import ch.njol.skript.config.Node;
+import com.sovdee.oopsk.core.Field;
+import com.sovdee.oopsk.core.StructTemplate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A sampling profiler for field accesses. While running, one in every {@link #getSampleRate() sample rate} accesses is
+ * timed and attributed to the template, field, and script line it came from. Dynamic field evaluations are also sampled,
+ * so expensive dynamic fields can be found regardless of where they're read from.
+ * <br>
+ * When the profiler is not running, checking whether to sample is a single volatile read.
+ */
+public class FieldProfiler {
+
+    /**
+     * What kind of access a sample was taken from.
+     */
+    public enum Kind {
+        /**
+         * A read of a non-dynamic field through a field access expression.
+         */
+        READ,
+        /**
+         * A read of a dynamic field through a field access expression, including evaluating it.
+         */
+        DYNAMIC_READ,
+        /**
+         * A change of a field through a field access expression.
+         */
+        WRITE,
+        /**
+         * The evaluation of a dynamic field, wherever it was read from. These samples have no script or line.
+         */
+        EVALUATION
+    }
+
+    /**
+     * Where a sample was taken.
+     *
+     * @param template The name of the template of the accessed struct.
+     * @param field    The name of the accessed field.
+     * @param kind     The kind of access.
+     * @param script   The script the access is in, or null if unknown.
+     * @param line     The line of the access in the script, or -1 if unknown.
+     */
+    public record Site(String template, String field, Kind kind, @Nullable String script, int line) {
+
+        @Override
+        public String toString() {
+            String location = script == null ? "" : " at " + script + (line == -1 ? "" : ":" + line);
+            return template + "." + field + " " + kind.name().toLowerCase(Locale.ENGLISH) + location;
+        }
+
+    }
+
+    /**
+     * The samples taken at a site.
+     *
+     * @param site           Where the samples were taken.
+     * @param samples        The number of samples.
+     * @param nanos          The total time of all samples, in nanoseconds.
+     * @param estimatedCalls The estimated number of accesses, based on the sample rate.
+     * @param estimatedNanos The estimated total time of all accesses, based on the sample rate.
+     */
+    public record Entry(Site site, long samples, long nanos, long estimatedCalls, long estimatedNanos) {
+
+        /**
+         * @return The average time of a single access, in nanoseconds.
+         */
+        public double averageNanos() {
+            return samples == 0 ? 0 : (double) nanos / samples;
+        }
+
+    }
+
+    private static final class SiteStats {
+        final LongAdder samples = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder estimatedCalls = new LongAdder();
+    }
+
+    private final Map<Site, SiteStats> sites = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private volatile int sampleRate = 16;
+
+    /**
+     * Starts sampling.
+     *
+     * @param sampleRate How many accesses to take one sample from, on average. 1 samples every access.
+     */
+    public void start(int sampleRate) {
+        if (sampleRate < 1)
+            throw new IllegalArgumentException("Sample rate must be at least 1, got " + sampleRate);
+        this.sampleRate = sampleRate;
+        running = true;
+    }
+
+    /**
+     * Stops sampling. Samples taken so far are kept until {@link #reset()}.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * @return Whether the profiler is sampling.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return How many accesses one sample is taken from, on average.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Discards all samples.
+     */
+    public void reset() {
+        sites.clear();
+    }
+
+    /**
+     * Decides whether to time the current access. Callers should only call {@link #record} if this returns true.
+     *
+     * @return Whether the current access should be sampled.
+     */
+    public boolean shouldSample() {
+        if (!running)
+            return false;
+        int rate = sampleRate;
+        return rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0;
+    }
+
+    /**
+     * Records a sample.
+     *
+     * @param template The template of the accessed struct.
+     * @param field    The accessed field.
+     * @param kind     The kind of access.
+     * @param node     The node of the script line the access is in, or null if unknown.
+     * @param nanos    How long the access took.
+     */
+    public void record(@NotNull StructTemplate template, @NotNull Field<?> field, @NotNull Kind kind, @Nullable Node node, long nanos) {
+        String script = null;
+        int line = -1;
+        if (node != null) {
+            if (node.getConfig() != null)
+                script = node.getConfig().getFileName();
+            line = node.getLine();
+        }
+        SiteStats stats = sites.computeIfAbsent(new Site(template.getName(), field.name(), kind, script, line), site -> new SiteStats());
+        stats.samples.increment();
+        stats.nanos.add(nanos);
+        stats.estimatedCalls.add(sampleRate);
+    }
+
+    /**
+     * Ranks the sampled sites by their estimated total time.
+     *
+     * @param limit The maximum number of sites to return.
+     * @return The most expensive sites, most expensive first.
+     */
+    public @NotNull List<Entry> report(int limit) {
+        List<Entry> entries = new ArrayList<>(sites.size());
+        for (Map.Entry<Site, SiteStats> entry : sites.entrySet()) {
+            SiteStats stats = entry.getValue();
+            long samples = stats.samples.sum();
+            long nanos = stats.nanos.sum();
+            long estimatedCalls = stats.estimatedCalls.sum();
+            long estimatedNanos = samples == 0 ? 0 : (long) ((double) nanos / samples * estimatedCalls);
+            entries.add(new Entry(entry.getKey(), samples, nanos, estimatedCalls, estimatedNanos));
+        }
+        entries.sort(Comparator.comparingLong(Entry::estimatedNanos).reversed());
+        return entries.size() > limit ? entries.subList(0, limit) : entries;
+    }
+
+}
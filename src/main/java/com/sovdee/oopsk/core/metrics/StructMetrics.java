@@ -0,0 +1,143 @@
+package com.sovdee.oopsk.core.metrics;
+
+import com.sovdee.oopsk.core.StructManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * StructMetrics collects counters about what structs are doing: how many are created, how often their fields are
+ * read and written through scripts, how long dynamic fields and template migrations take, and how often converters run.
+ * Counters are kept per template name. Use {@link #snapshot(StructManager)} to read them, for example from an exporter.
+ */
+public class StructMetrics {
+
+    private final Map<String, TemplateMetrics> templates = new ConcurrentHashMap<>();
+    // off unless enabled in the config, as counting adds work to every field access
+    private volatile boolean enabled;
+    private volatile long since = System.nanoTime();
+
+    /**
+     * Gets the counters for a template, creating them if needed.
+     *
+     * @param template The name of the template.
+     * @return The template's counters.
+     */
+    public @NotNull TemplateMetrics forTemplate(@NotNull String template) {
+        return templates.computeIfAbsent(template, name -> new TemplateMetrics(name, this));
+    }
+
+    /**
+     * @return Whether metrics are being collected.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables collecting metrics. Disabled metrics keep their current values.
+     *
+     * @param enabled Whether to collect metrics.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Resets all counters to zero.
+     */
+    public void reset() {
+        for (TemplateMetrics metrics : templates.values())
+            metrics.reset();
+        since = System.nanoTime();
+    }
+
+    /**
+     * Takes a snapshot of all counters.
+     *
+     * @param structManager The struct manager to count live structs from, or null to skip instance counts.
+     * @return The current values of all counters, by template name.
+     */
+    public @NotNull Snapshot snapshot(@Nullable StructManager structManager) {
+        Map<String, Integer> active = structManager == null ? Map.of() : structManager.getActiveCounts();
+        Map<String, Integer> orphaned = structManager == null ? Map.of() : structManager.getOrphanedCounts();
+        Map<String, TemplateSnapshot> snapshots = new TreeMap<>();
+        for (TemplateMetrics metrics : templates.values()) {
+            String name = metrics.getTemplate();
+            snapshots.put(name, new TemplateSnapshot(name,
+                    active.getOrDefault(name, 0),
+                    orphaned.getOrDefault(name, 0),
+                    metrics.created.sum(),
+                    metrics.fieldReads.sum(),
+                    metrics.fieldWrites.sum(),
+                    metrics.dynamicEvaluations.sum(),
+                    metrics.dynamicEvaluationNanos.sum(),
+                    metrics.conversions.sum(),
+                    metrics.migrations.sum(),
+                    metrics.migrationNanos.sum()));
+        }
+        return new Snapshot(Duration.ofNanos(System.nanoTime() - since), Collections.unmodifiableMap(snapshots));
+    }
+
+    /**
+     * The values of all counters at a point in time.
+     *
+     * @param elapsed   The time since counters were last reset, for computing rates.
+     * @param templates The counters of each template, by name.
+     */
+    public record Snapshot(Duration elapsed, Map<String, TemplateSnapshot> templates) {
+
+        /**
+         * @return The sum of the counters of all templates.
+         */
+        public TemplateSnapshot total() {
+            int live = 0, orphaned = 0;
+            long created = 0, reads = 0, writes = 0, evaluations = 0, evaluationNanos = 0, conversions = 0, migrations = 0, migrationNanos = 0;
+            for (TemplateSnapshot snapshot : templates.values()) {
+                live += snapshot.liveInstances();
+                orphaned += snapshot.orphanedInstances();
+                created += snapshot.created();
+                reads += snapshot.fieldReads();
+                writes += snapshot.fieldWrites();
+                evaluations += snapshot.dynamicEvaluations();
+                evaluationNanos += snapshot.dynamicEvaluationNanos();
+                conversions += snapshot.conversions();
+                migrations += snapshot.migrations();
+                migrationNanos += snapshot.migrationNanos();
+            }
+            return new TemplateSnapshot("*", live, orphaned, created, reads, writes, evaluations, evaluationNanos, conversions, migrations, migrationNanos);
+        }
+
+        /**
+         * @param count A counter's value.
+         * @return The average rate of the counter per second since counters were last reset.
+         */
+        public double perSecond(long count) {
+            double seconds = elapsed.toNanos() / 1e9;
+            return seconds <= 0 ? 0 : count / seconds;
+        }
+
+    }
+
+    /**
+     * The counters of a single template at a point in time.
+     * Instance counts only include tracked structs.
+     */
+    public record TemplateSnapshot(String template,
+                                   int liveInstances,
+                                   int orphanedInstances,
+                                   long created,
+                                   long fieldReads,
+                                   long fieldWrites,
+                                   long dynamicEvaluations,
+                                   long dynamicEvaluationNanos,
+                                   long conversions,
+                                   long migrations,
+                                   long migrationNanos) {}
+
+}
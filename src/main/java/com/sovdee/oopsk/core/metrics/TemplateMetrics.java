@@ -0,0 +1,116 @@
+package com.sovdee.oopsk.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters for a single template name. Counters survive template reloads, since they're tracked by name.
+ * All counters are safe to update from any thread.
+ */
+public class TemplateMetrics {
+
+    private final String template;
+    final LongAdder created = new LongAdder();
+    final LongAdder fieldReads = new LongAdder();
+    final LongAdder fieldWrites = new LongAdder();
+    final LongAdder dynamicEvaluations = new LongAdder();
+    final LongAdder dynamicEvaluationNanos = new LongAdder();
+    final LongAdder conversions = new LongAdder();
+    final LongAdder migrations = new LongAdder();
+    final LongAdder migrationNanos = new LongAdder();
+    private final StructMetrics owner;
+
+    TemplateMetrics(String template, StructMetrics owner) {
+        this.template = template;
+        this.owner = owner;
+    }
+
+    /**
+     * @return The name of the template these metrics are for.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return Whether metrics are being collected. Check this before timing anything that will be recorded.
+     */
+    public boolean isEnabled() {
+        return owner.isEnabled();
+    }
+
+    /**
+     * Records the creation of a struct.
+     */
+    public void recordCreation() {
+        if (owner.isEnabled())
+            created.increment();
+    }
+
+    /**
+     * Records the creation of several structs at once.
+     *
+     * @param count The number of structs created.
+     */
+    public void recordCreations(int count) {
+        if (owner.isEnabled())
+            created.add(count);
+    }
+
+    /**
+     * Records a read of a field through a field access expression.
+     */
+    public void recordFieldRead() {
+        if (owner.isEnabled())
+            fieldReads.increment();
+    }
+
+    /**
+     * Records a change of a field through a field access expression.
+     */
+    public void recordFieldWrite() {
+        if (owner.isEnabled())
+            fieldWrites.increment();
+    }
+
+    /**
+     * Records the evaluation of a dynamic field.
+     * @param nanos How long the evaluation took.
+     */
+    public void recordDynamicEvaluation(long nanos) {
+        if (!owner.isEnabled())
+            return;
+        dynamicEvaluations.increment();
+        dynamicEvaluationNanos.add(nanos);
+    }
+
+    /**
+     * Records the conversion of a struct via one of the template's converters.
+     */
+    public void recordConversion() {
+        if (owner.isEnabled())
+            conversions.increment();
+    }
+
+    /**
+     * Records the migration of a struct to a reloaded template.
+     * @param nanos How long the migration took.
+     */
+    public void recordMigration(long nanos) {
+        if (!owner.isEnabled())
+            return;
+        migrations.increment();
+        migrationNanos.add(nanos);
+    }
+
+    void reset() {
+        created.reset();
+        fieldReads.reset();
+        fieldWrites.reset();
+        dynamicEvaluations.reset();
+        dynamicEvaluationNanos.reset();
+        conversions.reset();
+        migrations.reset();
+        migrationNanos.reset();
+    }
+
+}
@@ -5,6 +5,7 @@ import ch.njol.skript.classes.Parser;
 import ch.njol.skript.lang.ParseContext;
 import ch.njol.skript.registrations.Classes;
 import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructSerializer;
 
 public class Types {
 
@@ -13,7 +14,7 @@ public class Types {
                 new ClassInfo<>(Struct.class, "struct")
                         .user("structs?")
                         .name("Struct")
-                        .description("A struct is a collection of typed fields.")
+                        .description("A struct is a collection of typed fields. Structs can be saved in global variables.")
                         .parser(new Parser<>() {
                             @Override
                             public boolean canParse(ParseContext context) {
@@ -30,6 +31,7 @@ public class Types {
                                 return "struct " + o.getTemplate().getName() + " (" + o.hashCode() + ")";
                             }
                         })
+                        .serializer(new StructSerializer())
         );
     }
 
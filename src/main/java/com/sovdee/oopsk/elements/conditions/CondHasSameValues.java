@@ -0,0 +1,61 @@
+package com.sovdee.oopsk.elements.conditions;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.doc.Description;
+import ch.njol.skript.doc.Example;
+import ch.njol.skript.doc.Name;
+import ch.njol.skript.doc.Since;
+import ch.njol.skript.lang.Condition;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.util.Kleenean;
+import com.sovdee.oopsk.core.Struct;
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.Nullable;
+
+@Name("Structs Have Same Values")
+@Description({
+        "Checks if structs have the same template and equal field values as another struct.",
+        "Comparing structs with 'is' checks whether they are the exact same struct. This condition instead compares their contents, " +
+        "so a struct and its copy have the same values until one of them is changed. Nested structs are compared by identity."
+})
+@Example("""
+        set {_copy} to a struct copy of {_struct}
+        if {_copy} has the same values as {_struct}:
+            broadcast "unchanged!"
+        """)
+@Since("1.0")
+public class CondHasSameValues extends Condition {
+
+    static {
+        Skript.registerCondition(CondHasSameValues.class,
+                "[the] %structs% (has|have) [the] same [field] values as %struct%",
+                "[the] %structs% (doesn't|does not|do not|don't) have [the] same [field] values as %struct%");
+    }
+
+    private Expression<Struct> structs;
+    private Expression<Struct> other;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
+        setNegated(matchedPattern == 1);
+        structs = (Expression<Struct>) expressions[0];
+        other = (Expression<Struct>) expressions[1];
+        return true;
+    }
+
+    @Override
+    public boolean check(Event event) {
+        Struct other = this.other.getSingle(event);
+        if (other == null)
+            return isNegated();
+        return structs.check(event, other::valueEquals, isNegated());
+    }
+
+    @Override
+    public String toString(@Nullable Event event, boolean debug) {
+        return structs.toString(event, debug) + (isNegated() ? " do not have" : " have") + " the same values as " + other.toString(event, debug);
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.sovdee.oopsk.elements.effects;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.config.Node;
+import ch.njol.skript.doc.Description;
+import ch.njol.skript.doc.Example;
+import ch.njol.skript.doc.Name;
+import ch.njol.skript.doc.Since;
+import ch.njol.skript.lang.Effect;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.util.Kleenean;
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.StructStore;
+import com.sovdee.oopsk.core.StructTemplate;
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.log.runtime.SyntaxRuntimeErrorProducer;
+
+import java.io.IOException;
+import java.util.Locale;
+
+@Name("Open/Close Struct Store")
+@Description({
+        "Opens, saves, or closes a struct store. Struct stores keep large numbers of structs of one template on disk, " +
+        "by key, without keeping their data in memory. Only the keys are kept in memory, which takes roughly 100 bytes plus the length of the key per struct. " +
+        "Stores are created the first time they're opened, and are closed when the server stops.",
+        "A store can only hold structs of the template it was created for. If that template's fields change while the store is open, " +
+        "existing structs can still be read, but new ones can't be put in it until it's closed and opened again. " +
+        "Opening a store after its template's fields changed updates every struct in it to the new fields first. " +
+        "This blocks the server until every struct has been rewritten, which may take a while for large stores.",
+        "Saving a store makes sure all changes are written to disk. Closing a store also saves it."
+})
+@Example("""
+        on load:
+            open struct store "player data" for playerdata structs
+
+        on join:
+            set {_data} to the struct at key "%uuid of player%" in struct store "player data"
+        """)
+@Example("close struct store \"player data\"")
+@Since("1.0")
+public class EffStructStore extends Effect implements SyntaxRuntimeErrorProducer {
+
+    static {
+        Skript.registerEffect(EffStructStore.class,
+                "open [the] struct store %string% for <([\\w ]+)> structs",
+                "save [the] struct store %string%",
+                "close [the] struct store %string%");
+    }
+
+    private enum Action { OPEN, SAVE, CLOSE }
+
+    private Action action;
+    private Expression<String> storeName;
+    private String templateName;
+    private Node node;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
+        action = Action.values()[matchedPattern];
+        storeName = (Expression<String>) expressions[0];
+        if (action == Action.OPEN) {
+            templateName = parseResult.regexes.get(0).group(1).trim().toLowerCase(Locale.ENGLISH);
+            if (Oopsk.getTemplateManager().getTemplate(templateName) == null) {
+                Skript.error("A struct by the name of '" + templateName + "' does not exist.");
+                return false;
+            }
+        }
+        node = getParser().getNode();
+        return true;
+    }
+
+    @Override
+    protected void execute(Event event) {
+        String name = storeName.getSingle(event);
+        if (name == null)
+            return;
+        var storeManager = Oopsk.getStoreManager();
+        try {
+            switch (action) {
+                case OPEN -> {
+                    StructTemplate template = Oopsk.getTemplateManager().getTemplate(templateName);
+                    if (template == null) {
+                        error("A struct by the name of '" + templateName + "' does not exist.");
+                        return;
+                    }
+                    storeManager.open(name, template);
+                }
+                case SAVE -> {
+                    StructStore store = storeManager.getStore(name);
+                    if (store == null) {
+                        error("Struct store '" + name + "' is not open.");
+                        return;
+                    }
+                    store.flush();
+                }
+                case CLOSE -> storeManager.close(name);
+            }
+        } catch (IOException | IllegalStateException e) {
+            error("Failed to " + action.name().toLowerCase(Locale.ENGLISH) + " struct store '" + name + "': " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public String toString(@Nullable Event event, boolean debug) {
+        return switch (action) {
+            case OPEN -> "open struct store " + storeName.toString(event, debug) + " for " + templateName + " structs";
+            case SAVE -> "save struct store " + storeName.toString(event, debug);
+            case CLOSE -> "close struct store " + storeName.toString(event, debug);
+        };
+    }
+
+}
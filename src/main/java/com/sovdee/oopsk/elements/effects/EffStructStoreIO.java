@@ -0,0 +1,173 @@
+package com.sovdee.oopsk.elements.effects;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.config.Node;
+import ch.njol.skript.doc.Description;
+import ch.njol.skript.doc.Example;
+import ch.njol.skript.doc.Name;
+import ch.njol.skript.doc.Since;
+import ch.njol.skript.effects.Delay;
+import ch.njol.skript.lang.Effect;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.skript.lang.TriggerItem;
+import ch.njol.skript.lang.Variable;
+import ch.njol.skript.variables.Variables;
+import ch.njol.util.Kleenean;
+import ch.njol.util.Pair;
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructStore;
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.log.runtime.SyntaxRuntimeErrorProducer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+@Name("Save/Load Structs in the Background")
+@Description({
+        "Saves structs to, or loads structs from, an open struct store without blocking the server. " +
+        "The structs are saved under the indices of the list variable they're in, and loaded into a list variable under their keys.",
+        "Saving serializes the structs right away, along with any structs they hold, so they can be changed straight after, " +
+        "and writes them in the background. " +
+        "Add 'and wait' to wait until the structs have been written to disk before continuing.",
+        "Loading always waits until the structs have been read. Keys that aren't in the store are skipped."
+})
+@Example("""
+        every 5 minutes:
+            loop all players:
+                set {_data::%uuid of loop-player%} to {playerdata::%uuid of loop-player%}
+            save structs {_data::*} to struct store "player data"
+        """)
+@Example("""
+        on join:
+            load structs "%uuid of player%" from struct store "player data" into {_loaded::*}
+            set {playerdata::%uuid of player%} to {_loaded::%uuid of player%}
+        """)
+@Since("1.0")
+public class EffStructStoreIO extends Effect implements SyntaxRuntimeErrorProducer {
+
+    static {
+        Skript.registerEffect(EffStructStoreIO.class,
+                "save [the] structs %~objects% (in|to) [the] struct store %string% [wait:and wait]",
+                "load [the] structs %strings% from [the] struct store %string% into %~objects%");
+    }
+
+    private boolean load;
+    private boolean wait;
+    private Variable<?> structs;
+    private Expression<String> keys;
+    private Expression<String> storeName;
+    private Node node;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
+        load = matchedPattern == 1;
+        wait = load || parseResult.hasTag("wait");
+        Expression<?> variable = load ? expressions[2] : expressions[0];
+        if (!(variable instanceof Variable<?> listVariable) || !listVariable.isList()) {
+            Skript.error("Structs can only be " + (load ? "loaded into" : "saved from") + " a list variable.");
+            return false;
+        }
+        structs = listVariable;
+        storeName = (Expression<String>) expressions[1];
+        if (load)
+            keys = (Expression<String>) expressions[0];
+        if (wait)
+            getParser().setHasDelayBefore(Kleenean.TRUE);
+        node = getParser().getNode();
+        return true;
+    }
+
+    @Override
+    protected @Nullable TriggerItem walk(Event event) {
+        debug(event, true);
+        CompletableFuture<?> future = start(event);
+        if (!wait || future == null)
+            return getNext();
+
+        // resume the trigger once the work is done, the same way a delay does
+        Delay.addDelayedEvent(event);
+        Object localVariables = Variables.removeLocals(event);
+        future.whenComplete((result, throwable) -> {
+            if (localVariables != null)
+                Variables.setLocalVariables(event, localVariables);
+            if (throwable != null) {
+                error("Failed to " + (load ? "load" : "save") + " structs: " + throwable.getMessage());
+            } else if (load) {
+                setLoaded(event, (Map<?, ?>) result);
+            }
+            TriggerItem next = getNext();
+            if (next != null)
+                TriggerItem.walk(next, event);
+            Variables.removeLocals(event);
+        });
+        return null;
+    }
+
+    /**
+     * Starts saving or loading.
+     *
+     * @return The pending work, or null if nothing was started.
+     */
+    private @Nullable CompletableFuture<?> start(Event event) {
+        String name = storeName.getSingle(event);
+        if (name == null)
+            return null;
+        StructStore store = Oopsk.getStoreManager().getStore(name);
+        if (store == null) {
+            error("Struct store '" + name + "' is not open.");
+            return null;
+        }
+        if (load)
+            return Oopsk.getStoreIO().load(store, List.of(keys.getArray(event)));
+
+        Map<String, Struct> toSave = new LinkedHashMap<>();
+        Iterator<Pair<String, Object>> iterator = structs.variablesIterator(event);
+        while (iterator.hasNext()) {
+            Pair<String, Object> pair = iterator.next();
+            if (pair.getSecond() instanceof Struct struct)
+                toSave.put(pair.getFirst(), struct);
+        }
+        CompletableFuture<Void> future = Oopsk.getStoreIO().save(store, toSave);
+        if (!wait) {
+            future.whenComplete((result, throwable) -> {
+                if (throwable != null)
+                    error("Failed to save structs: " + throwable.getMessage());
+            });
+        }
+        return future;
+    }
+
+    private void setLoaded(Event event, Map<?, ?> loaded) {
+        String name = structs.getName().toString(event);
+        String prefix = name.substring(0, name.length() - 1);
+        for (Map.Entry<?, ?> entry : loaded.entrySet())
+            Variables.setVariable(prefix + entry.getKey(), entry.getValue(), event, structs.isLocal());
+    }
+
+    @Override
+    protected void execute(Event event) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public String toString(@Nullable Event event, boolean debug) {
+        if (load)
+            return "load structs " + keys.toString(event, debug) + " from struct store " + storeName.toString(event, debug)
+                    + " into " + structs.toString(event, debug);
+        return "save structs " + structs.toString(event, debug) + " to struct store " + storeName.toString(event, debug)
+                + (wait ? " and wait" : "");
+    }
+
+}
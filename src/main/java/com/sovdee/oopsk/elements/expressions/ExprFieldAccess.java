@@ -20,23 +20,19 @@ import com.sovdee.oopsk.Oopsk;
 import com.sovdee.oopsk.core.Field;
 import com.sovdee.oopsk.core.Struct;
 import com.sovdee.oopsk.core.StructTemplate;
+import com.sovdee.oopsk.core.metrics.FieldProfiler;
+import com.sovdee.oopsk.core.metrics.FieldProfiler.Kind;
 import org.bukkit.event.Event;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.skriptlang.skript.lang.arithmetic.Arithmetics;
 import org.skriptlang.skript.lang.arithmetic.OperationInfo;
 import org.skriptlang.skript.lang.arithmetic.Operator;
-import org.skriptlang.skript.lang.comparator.Comparators;
-import org.skriptlang.skript.lang.comparator.Relation;
 import org.skriptlang.skript.lang.converter.Converters;
 import org.skriptlang.skript.log.runtime.SyntaxRuntimeErrorProducer;
 
-import java.lang.reflect.Array;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
@@ -69,6 +65,22 @@ public class ExprFieldAccess extends PropertyExpression<Struct, Object> implemen
     boolean isAnyFieldPlural;
     boolean areAllFieldsConstant;
 
+    /**
+     * Inline cache of field resolutions, keyed on template identity. Templates are immutable and a reload always
+     * creates a new template, so a cached entry can never go stale; structs of reloaded templates simply miss and
+     * are resolved again. Entries are replaced wholesale so evaluation from multiple threads is safe.
+     */
+    private volatile ResolvedField[] resolvedFields = new ResolvedField[0];
+    private static final int MAX_CACHED_TEMPLATES = 4;
+
+    /**
+     * The result of resolving this expression's field name against a template.
+     * @param template The template the field was resolved in.
+     * @param field The field, or null if the template has no field with this name.
+     * @param typeSafe Whether every value of the field is an instance of one of the parse-time return types.
+     */
+    private record ResolvedField(StructTemplate template, @Nullable Field<?> field, boolean typeSafe) {}
+
     @Override
     public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
         //noinspection unchecked
@@ -80,6 +92,9 @@ public class ExprFieldAccess extends PropertyExpression<Struct, Object> implemen
             return false;
         }
         fieldName = fieldName.trim().toLowerCase(Locale.ENGLISH);
+        // let cached dynamic fields know which fields of 'this' they read
+        if (getExpr() instanceof ExprThisStruct)
+            Field.recordDependency(fieldName);
         if (!updateFieldGuesses()) {
             return false;
         }
@@ -149,6 +164,38 @@ public class ExprFieldAccess extends PropertyExpression<Struct, Object> implemen
         return true;
     }
 
+    /**
+     * Resolves the field this expression accesses in the given template, using the inline cache when possible.
+     * @param template The template to resolve the field in.
+     * @return The resolved field, which may have a null field if the template does not contain it.
+     */
+    private ResolvedField resolve(StructTemplate template) {
+        ResolvedField[] cache = resolvedFields;
+        for (ResolvedField resolved : cache) {
+            if (resolved.template() == template)
+                return resolved;
+        }
+        // slow path: look up the field by name and check its type against the parse-time guesses
+        Field<?> field = template.getField(fieldName);
+        boolean typeSafe = false;
+        if (field != null) {
+            Class<?> fieldType = field.type().getC();
+            for (Class<?> type : returnTypes) {
+                if (type.isAssignableFrom(fieldType)) {
+                    typeSafe = true;
+                    break;
+                }
+            }
+        }
+        ResolvedField resolved = new ResolvedField(template, field, typeSafe);
+        // keep the most recent templates, evicting the oldest once full
+        ResolvedField[] updated = new ResolvedField[Math.min(cache.length + 1, MAX_CACHED_TEMPLATES)];
+        updated[0] = resolved;
+        System.arraycopy(cache, 0, updated, 1, updated.length - 1);
+        resolvedFields = updated;
+        return resolved;
+    }
+
     private void noFieldFoundError(Set<StructTemplate> templates) {
         if (!templates.isEmpty()) {
             Skript.error("No field with name '" + fieldName + "' found in the structs " + Classes.toString(templates.stream().map(StructTemplate::getName).toArray(), false) + ".");
@@ -165,12 +212,20 @@ public class ExprFieldAccess extends PropertyExpression<Struct, Object> implemen
         Struct struct = source[0];
         StructTemplate template = struct.getTemplate();
         // get the field
-        Field<?> field = template.getField(fieldName);
+        ResolvedField resolved = resolve(template);
+        Field<?> field = resolved.field();
         if (field == null) {
             error("Field " + fieldName + " not found in struct " + template.getName());
             return new Object[0];
         }
+        template.getMetrics().recordFieldRead();
+        FieldProfiler profiler = Oopsk.getProfiler();
+        long start = profiler.shouldSample() ? System.nanoTime() : 0;
         var value = struct.getFieldValue(field);
+        if (start != 0)
+            profiler.record(template, field, field.dynamic() ? Kind.DYNAMIC_READ : Kind.READ, node, System.nanoTime() - start);
+        if (resolved.typeSafe())
+            return value;
         // check type is accurate to what we claimed
         Class<?> type = value.getClass().getComponentType();
         if (Arrays.stream(returnTypes).noneMatch(returnType -> returnType.isAssignableFrom(type))) {
@@ -259,7 +314,7 @@ public class ExprFieldAccess extends PropertyExpression<Struct, Object> implemen
             return;
         StructTemplate template = struct.getTemplate();
         // get the field
-        Field<?> field = template.getField(fieldName);
+        Field<?> field = resolve(template).field();
 
         if (field == null) {
             error("Field " + fieldName + " not found in struct " + template.getName());
@@ -276,18 +331,21 @@ public class ExprFieldAccess extends PropertyExpression<Struct, Object> implemen
             return;
         }
 
+        template.getMetrics().recordFieldWrite();
+        FieldProfiler profiler = Oopsk.getProfiler();
+        long start = profiler.shouldSample() ? System.nanoTime() : 0;
         switch (mode) {
             case RESET -> // reset the field to its default value
                     struct.resetFieldValue(field, event);
             case DELETE -> // delete the field value
                     struct.setFieldValue(field, null);
             case SET -> {
-                if (delta == null || delta.length == 0) return;
+                if (delta == null || delta.length == 0) break;
                 // set the field value
                 setField(struct, field, delta);
             }
             case ADD, REMOVE, REMOVE_ALL -> {
-                if (delta == null || delta.length == 0) return;
+                if (delta == null || delta.length == 0) break;
                 // if single, delegate to the changer.
                 if (field.single())
                     delegateChange(struct, field, mode, delta);
@@ -295,6 +353,8 @@ public class ExprFieldAccess extends PropertyExpression<Struct, Object> implemen
                     modifyListField(struct, field, mode, delta);
             }
         }
+        if (start != 0)
+            profiler.record(template, field, Kind.WRITE, node, System.nanoTime() - start);
 
     }
 
@@ -393,6 +453,8 @@ public class ExprFieldAccess extends PropertyExpression<Struct, Object> implemen
 
             if (convertedDelta.length > 0) {
                 Changer.ChangerUtils.change(changer, arrayValue, convertedDelta, mode);
+                // the value was changed in place, store it again so dependent cached fields are discarded
+                struct.setFieldValue(field, arrayValue);
                 return;
             }
         }
@@ -418,36 +480,10 @@ public class ExprFieldAccess extends PropertyExpression<Struct, Object> implemen
             warning("Not all values are of the correct type for " + field + " of " + struct + ". " +
                     (delta.length - convertedDelta.length) + " value[s] were ignored.");
         }
-        // get the current field value
-        T[] fieldValue = struct.getFieldValue(field);
         if (mode == ChangeMode.ADD) {
-            // add the values to the field
-            T[] newValue = Arrays.copyOf(fieldValue, fieldValue.length + convertedDelta.length);
-            System.arraycopy(convertedDelta, 0, newValue, fieldValue.length, convertedDelta.length);
-            struct.setFieldValue(field, newValue);
-
+            struct.addFieldValues(field, convertedDelta);
         } else if (mode == ChangeMode.REMOVE || mode == ChangeMode.REMOVE_ALL) {
-            List<T> deltaList = new ArrayList<>(Arrays.asList(convertedDelta));
-            List<T> valuesList = new ArrayList<>(Arrays.asList(fieldValue));
-            for (Iterator<T> fieldIterator = valuesList.iterator(); fieldIterator.hasNext(); ) {
-                T value = fieldIterator.next();
-
-                for (Iterator<T> deltaIterator = deltaList.iterator(); deltaIterator.hasNext(); ) {
-                    T removeValue = deltaIterator.next();
-
-                    if (Relation.EQUAL.isImpliedBy(Comparators.compare(value, removeValue))) {
-                        fieldIterator.remove();
-                        if (mode == ChangeMode.REMOVE) {
-                            // if only removing first, remove this removeValue from delta to prevent it from matching another value
-                            deltaIterator.remove();
-                            break; // No need to check other values, only remove first
-                        }
-                    }
-                }
-            }
-            // set the field value to the new list
-            //noinspection unchecked
-            struct.setFieldValue(field, valuesList.toArray((T[]) Array.newInstance(field.type().getC(), 0)));
+            struct.removeFieldValues(field, convertedDelta, mode == ChangeMode.REMOVE_ALL);
         }
     }
 
@@ -19,6 +19,7 @@ import ch.njol.skript.util.LiteralUtils;
 import ch.njol.util.Kleenean;
 import ch.njol.util.coll.CollectionUtils;
 import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.ConstructionPlan;
 import com.sovdee.oopsk.core.Field;
 import com.sovdee.oopsk.core.Struct;
 import com.sovdee.oopsk.core.StructTemplate;
@@ -70,14 +71,17 @@ public class ExprSecStructInstance extends SectionExpression<Struct> implements
         this.node = getParser().getNode();
 
         // parse starting field values
-        if (node != null)
-            return parseInitialValues(node, Oopsk.getTemplateManager().getTemplate(name));
+        StructTemplate template = Oopsk.getTemplateManager().getTemplate(name);
+        if (node != null && !parseInitialValues(node, template))
+            return false;
 
+        compilePlan(template);
         return true;
     }
 
     private static final Pattern ENTRY_PATTERN = Pattern.compile("([\\w ]+): (.+)");
     private final Map<String, Expression<?>> parsedFieldValues = new HashMap<>();
+    private volatile ConstructionPlan plan;
 
     /**
      * Parses the initial values of the struct instance.
@@ -137,15 +141,26 @@ public class ExprSecStructInstance extends SectionExpression<Struct> implements
 
     @Override
     protected Struct @Nullable [] get(Event event) {
-        StructTemplate template = Oopsk.getTemplateManager().getTemplate(name);
-        if (template == null) {
-            error("A struct by the name of '" + name + "' does not exist.");
-            return CollectionUtils.array();
+        ConstructionPlan plan = this.plan;
+        // the plan is recompiled if the template was reloaded since it was last used
+        if (plan == null || plan.getTemplate().isRetired()) {
+            StructTemplate template = Oopsk.getTemplateManager().getTemplate(name);
+            if (template == null) {
+                error("A struct by the name of '" + name + "' does not exist.");
+                return CollectionUtils.array();
+            }
+            plan = compilePlan(template);
         }
-        Struct struct = Oopsk.getStructManager().createStruct(template, event, parsedFieldValues);
+        Struct struct = Oopsk.getStructManager().createStruct(plan, event);
         return CollectionUtils.array(struct);
     }
 
+    private ConstructionPlan compilePlan(StructTemplate template) {
+        ConstructionPlan plan = new ConstructionPlan(template, parsedFieldValues);
+        this.plan = plan;
+        return plan;
+    }
+
     @Override
     public boolean isSingle() {
         return true;
@@ -0,0 +1,129 @@
+package com.sovdee.oopsk.elements.expressions;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.classes.Changer.ChangeMode;
+import ch.njol.skript.config.Node;
+import ch.njol.skript.doc.Description;
+import ch.njol.skript.doc.Example;
+import ch.njol.skript.doc.Name;
+import ch.njol.skript.doc.Since;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.ExpressionType;
+import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.skript.lang.util.SimpleExpression;
+import ch.njol.util.Kleenean;
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructStore;
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.log.runtime.SyntaxRuntimeErrorProducer;
+
+import java.io.UncheckedIOException;
+
+@Name("Stored Struct")
+@Description({
+        "Gets, sets, or deletes the struct stored under a key in a struct store. The store must be opened first.",
+        "Getting a struct reads a new copy of it from the store each time. Changes to that copy are only saved once it's set back into the store."
+})
+@Example("""
+        set {_data} to the struct at key "%uuid of player%" in struct store "player data"
+        if {_data} is not set:
+            set {_data} to a playerdata struct instance
+        add 1 to {_data}->joins
+        set the struct at key "%uuid of player%" in struct store "player data" to {_data}
+        """)
+@Example("delete the struct at key \"%uuid of player%\" in struct store \"player data\"")
+@Since("1.0")
+public class ExprStoredStruct extends SimpleExpression<Struct> implements SyntaxRuntimeErrorProducer {
+
+    static {
+        Skript.registerExpression(ExprStoredStruct.class, Struct.class, ExpressionType.COMBINED,
+                "[the] [stored] struct (at|under) [the] key %string% in [the] struct store %string%");
+    }
+
+    private Expression<String> key;
+    private Expression<String> storeName;
+    private Node node;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
+        key = (Expression<String>) expressions[0];
+        storeName = (Expression<String>) expressions[1];
+        node = getParser().getNode();
+        return true;
+    }
+
+    private @Nullable StructStore getStore(Event event) {
+        String name = storeName.getSingle(event);
+        if (name == null)
+            return null;
+        StructStore store = Oopsk.getStoreManager().getStore(name);
+        if (store == null)
+            error("Struct store '" + name + "' is not open.");
+        return store;
+    }
+
+    @Override
+    protected Struct @Nullable [] get(Event event) {
+        String key = this.key.getSingle(event);
+        StructStore store = getStore(event);
+        if (key == null || store == null)
+            return new Struct[0];
+        try {
+            Struct struct = store.get(key);
+            return struct == null ? new Struct[0] : new Struct[]{struct};
+        } catch (UncheckedIOException | IllegalStateException e) {
+            error(e.getMessage());
+            return new Struct[0];
+        }
+    }
+
+    @Override
+    public Class<?> @Nullable [] acceptChange(ChangeMode mode) {
+        return switch (mode) {
+            case SET -> new Class[]{Struct.class};
+            case DELETE -> new Class[0];
+            default -> null;
+        };
+    }
+
+    @Override
+    public void change(Event event, Object @Nullable [] delta, ChangeMode mode) {
+        String key = this.key.getSingle(event);
+        StructStore store = getStore(event);
+        if (key == null || store == null)
+            return;
+        try {
+            if (mode == ChangeMode.SET && delta != null && delta.length > 0 && delta[0] instanceof Struct struct) {
+                store.put(key, struct);
+            } else if (mode == ChangeMode.DELETE) {
+                store.remove(key);
+            }
+        } catch (UncheckedIOException | IllegalArgumentException | IllegalStateException e) {
+            error(e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isSingle() {
+        return true;
+    }
+
+    @Override
+    public Class<? extends Struct> getReturnType() {
+        return Struct.class;
+    }
+
+    @Override
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public String toString(@Nullable Event event, boolean debug) {
+        return "the struct at key " + key.toString(event, debug) + " in struct store " + storeName.toString(event, debug);
+    }
+
+}
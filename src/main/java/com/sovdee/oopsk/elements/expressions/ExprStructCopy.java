@@ -5,23 +5,40 @@ import ch.njol.skript.doc.Example;
 import ch.njol.skript.doc.Name;
 import ch.njol.skript.doc.Since;
 import ch.njol.skript.expressions.base.SimplePropertyExpression;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.util.Kleenean;
 import com.sovdee.oopsk.core.Struct;
 import org.jetbrains.annotations.Nullable;
 
 @Name("Struct Copy")
-@Description("Makes a copy of a struct. The field contents may or may not be copies, depending on their types. " +
-        "Entities, for example, cannot be copied.")
+@Description({
+        "Makes a copy of a struct. The field contents may or may not be copies, depending on their types. " +
+        "Entities, for example, cannot be copied.",
+        "A struct snapshot is a copy that shares its field contents with the original until either struct uses them, " +
+        "and only then copies the fields that were used. This makes copying a large struct that's mostly read, " +
+        "or never used again, much cheaper. Snapshots otherwise behave exactly like copies."
+})
 @Example("set {_a} to a struct copy of {_b}->playerdata")
+@Example("set {_backup} to a struct snapshot of {_state}")
 @Since("1.0")
 public class ExprStructCopy extends SimplePropertyExpression<Struct, Struct> {
 
     static {
-        register(ExprStructCopy.class, Struct.class, "[a] struct copy", "structs");
+        register(ExprStructCopy.class, Struct.class, "[a] struct (copy|:snapshot)", "structs");
+    }
+
+    private boolean snapshot;
+
+    @Override
+    public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
+        snapshot = parseResult.hasTag("snapshot");
+        return super.init(expressions, matchedPattern, isDelayed, parseResult);
     }
 
     @Override
     public @Nullable Struct convert(Struct struct) {
-        return Struct.newInstance(struct);
+        return snapshot ? Struct.newSnapshot(struct) : Struct.newInstance(struct);
     }
 
     @Override
@@ -31,6 +48,6 @@ public class ExprStructCopy extends SimplePropertyExpression<Struct, Struct> {
 
     @Override
     protected String getPropertyName() {
-        return "struct copy";
+        return snapshot ? "struct snapshot" : "struct copy";
     }
 }
@@ -0,0 +1,86 @@
+package com.sovdee.oopsk.elements.expressions;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.config.Node;
+import ch.njol.skript.doc.Description;
+import ch.njol.skript.doc.Example;
+import ch.njol.skript.doc.Name;
+import ch.njol.skript.doc.Since;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.ExpressionType;
+import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.skript.lang.util.SimpleExpression;
+import ch.njol.util.Kleenean;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructJson;
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.log.runtime.SyntaxRuntimeErrorProducer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+@Name("Struct from JSON")
+@Description({
+        "Creates structs from JSON made by the struct json expression. The first property must be \"template\", " +
+        "the name of the struct's template. Fields that are missing get their default values, and unknown fields are ignored.",
+        "Values written as objects by the struct json expression are read from their saved data, or parsed from their Skript name if there is none. " +
+        "Text values of fields that aren't text are parsed the same way Skript parses them in scripts. Values that can't be read are errors."
+})
+@Example("set {_point} to struct from json \"{\"\"template\"\":\"\"point\"\",\"\"x\"\":1,\"\"y\"\":2}\"")
+@Since("1.0")
+public class ExprStructFromJson extends SimpleExpression<Struct> implements SyntaxRuntimeErrorProducer {
+
+    static {
+        Skript.registerExpression(ExprStructFromJson.class, Struct.class, ExpressionType.COMBINED,
+                "struct[s] from [the] json %strings%");
+    }
+
+    private Expression<String> json;
+    private Node node;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
+        json = (Expression<String>) expressions[0];
+        node = getParser().getNode();
+        return true;
+    }
+
+    @Override
+    protected Struct @Nullable [] get(Event event) {
+        List<Struct> structs = new ArrayList<>();
+        for (String string : json.getArray(event)) {
+            try {
+                Struct struct = StructJson.fromJson(string);
+                if (struct != null)
+                    structs.add(struct);
+            } catch (IOException e) {
+                error("Invalid struct JSON: " + e.getMessage());
+            }
+        }
+        return structs.toArray(new Struct[0]);
+    }
+
+    @Override
+    public boolean isSingle() {
+        return json.isSingle();
+    }
+
+    @Override
+    public Class<? extends Struct> getReturnType() {
+        return Struct.class;
+    }
+
+    @Override
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public String toString(@Nullable Event event, boolean debug) {
+        return "structs from json " + json.toString(event, debug);
+    }
+
+}
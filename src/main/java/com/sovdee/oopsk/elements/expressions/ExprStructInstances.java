@@ -0,0 +1,99 @@
+package com.sovdee.oopsk.elements.expressions;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.config.Node;
+import ch.njol.skript.doc.Description;
+import ch.njol.skript.doc.Example;
+import ch.njol.skript.doc.Name;
+import ch.njol.skript.doc.Since;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.ExpressionType;
+import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.skript.lang.util.SimpleExpression;
+import ch.njol.util.Kleenean;
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructManager;
+import com.sovdee.oopsk.core.StructTemplate;
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.log.runtime.SyntaxRuntimeErrorProducer;
+
+import java.util.Locale;
+
+@Name("Multiple Struct Creation")
+@Description("Creates a number of instances of a struct at once, each with its default values. The template name is case insensitive. " +
+        "This is faster than creating the structs one at a time in a loop, as defaults that are the same for every struct are only evaluated once. " +
+        "At most 100,000 structs can be created at once.")
+@Example("""
+        set {_markers::*} to 20 marker struct instances
+        loop {_markers::*}:
+            set loop-value->index to loop-index parsed as integer
+        """)
+@Since("1.0")
+public class ExprStructInstances extends SimpleExpression<Struct> implements SyntaxRuntimeErrorProducer {
+
+    static {
+        Skript.registerExpression(ExprStructInstances.class, Struct.class, ExpressionType.COMBINED,
+                "%integer% <([\\w ]+)> struct instances");
+    }
+
+    private Expression<Integer> count;
+    private String name;
+    private Node node;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
+        count = (Expression<Integer>) expressions[0];
+        name = parseResult.regexes.get(0).group(1).trim().toLowerCase(Locale.ENGLISH);
+        if (Oopsk.getTemplateManager().getTemplate(name) == null) {
+            Skript.error("A struct by the name of '" + name + "' does not exist.");
+            return false;
+        }
+        node = getParser().getNode();
+        return true;
+    }
+
+    @Override
+    protected Struct @Nullable [] get(Event event) {
+        Integer count = this.count.getSingle(event);
+        if (count == null || count <= 0)
+            return new Struct[0];
+        if (count > StructManager.MAX_BULK_CREATION) {
+            error("Cannot create more than " + StructManager.MAX_BULK_CREATION + " structs at once, but " + count + " were requested.");
+            return new Struct[0];
+        }
+        StructTemplate template = Oopsk.getTemplateManager().getTemplate(name);
+        if (template == null) {
+            error("A struct by the name of '" + name + "' does not exist.");
+            return new Struct[0];
+        }
+        return Oopsk.getStructManager().createStructs(template, event, count);
+    }
+
+    @Override
+    public boolean isSingle() {
+        return false;
+    }
+
+    @Override
+    public Class<? extends Struct> getReturnType() {
+        var template = Oopsk.getTemplateManager().getTemplate(name);
+        if (template != null && template.getCustomClass() != null) {
+            return template.getCustomClass();
+        }
+        return Struct.class;
+    }
+
+    @Override
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public String toString(@Nullable Event event, boolean debug) {
+        return count.toString(event, debug) + " " + name + " struct instances";
+    }
+
+}
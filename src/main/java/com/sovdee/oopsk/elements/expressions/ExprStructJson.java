@@ -0,0 +1,65 @@
+package com.sovdee.oopsk.elements.expressions;
+
+import ch.njol.skript.config.Node;
+import ch.njol.skript.doc.Description;
+import ch.njol.skript.doc.Example;
+import ch.njol.skript.doc.Name;
+import ch.njol.skript.doc.Since;
+import ch.njol.skript.expressions.base.SimplePropertyExpression;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.util.Kleenean;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructJson;
+import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.log.runtime.SyntaxRuntimeErrorProducer;
+
+@Name("Struct JSON")
+@Description({
+        "Converts a struct to JSON, with a property for each field. Plural fields are written as arrays and nested structs as nested objects. " +
+        "Numbers, booleans and texts are written as JSON values. Other values are written as objects with their type, " +
+        "their Skript name, and their saved data, so they can be read back exactly. " +
+        "Structs holding values that can't be saved, like entities, can't be converted.",
+        "Dynamic fields are not included. See the struct from json expression to convert JSON back into a struct."
+})
+@Example("send json of {_point} # {\"template\":\"point\",\"x\":1,\"y\":2}")
+@Since("1.0")
+public class ExprStructJson extends SimplePropertyExpression<Struct, String> implements SyntaxRuntimeErrorProducer {
+
+    static {
+        register(ExprStructJson.class, String.class, "[struct] json", "structs");
+    }
+
+    private Node node;
+
+    @Override
+    public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
+        node = getParser().getNode();
+        return super.init(expressions, matchedPattern, isDelayed, parseResult);
+    }
+
+    @Override
+    public @Nullable String convert(Struct struct) {
+        try {
+            return StructJson.toJson(struct);
+        } catch (IllegalArgumentException e) {
+            error(e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public Class<? extends String> getReturnType() {
+        return String.class;
+    }
+
+    @Override
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    protected String getPropertyName() {
+        return "json";
+    }
+}
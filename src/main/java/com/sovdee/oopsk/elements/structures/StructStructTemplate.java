@@ -60,10 +60,16 @@ import static com.sovdee.oopsk.core.generation.ReflectionUtils.removeLanguageNod
         "Fields can be marked as constant by adding 'const' or 'constant' at the beginning of the line. Constant fields cannot be changed after the struct is created.",
         "Dynamic fields can be made by adding 'dynamic' to the beginning of the line. Dynamic fields require a default value and will always re-evaluate their value each time they are called. " +
         "This means they cannot be changed directly, but can rely on the values of other fields or even functions.",
+        "Dynamic fields can also be marked as 'cached dynamic'. Cached fields remember their value and only re-evaluate it after one of the fields " +
+        "of 'this' struct that they use is changed. Only use this for fields that depend solely on other fields of the same struct, " +
+        "as changes to anything else, including changes made inside values like vectors or nested structs, will not be noticed.",
         "Converters can be defined in a 'converts to:' section. Each converter is defined in the format '<target type> via %expression%'. " +
         "Note that oopsk cannot generate chained converters reliably, so you should expressly define converters for all target types you wish to convert to.",
         "Be careful when using converters, as they can cause unexpected behavior in all of your scripts if not used properly." +
-        "Best practice is to ensure you reload all scripts after defining or modifying struct templates to ensure all converters are registered correctly."
+        "Best practice is to ensure you reload all scripts after defining or modifying struct templates to ensure all converters are registered correctly.",
+        "Templates can be marked as 'untracked'. oopsk does not keep track of untracked structs, which makes creating them cheaper. " +
+        "This is useful for short-lived structs like vectors or results. When an untracked template is reloaded, its existing structs are " +
+        "updated the next time they are used, rather than all at once."
 })
 @Example("""
     struct message:
@@ -89,22 +95,29 @@ import static com.sovdee.oopsk.core.generation.ReflectionUtils.removeLanguageNod
             player via this->player
             location via this->player's location
     """)
+@Example("""
+    untracked struct Vec2:
+        x: number = 0
+        y: number = 0
+    """)
 @Since("1.0")
 public class StructStructTemplate extends Structure {
 
     static {
-        Skript.registerStructure(StructStructTemplate.class, "struct <(" + Functions.functionNamePattern + ")>");
+        Skript.registerStructure(StructStructTemplate.class, "[:untracked] struct <(" + Functions.functionNamePattern + ")>");
     }
 
     private StructTemplate template;
     private EntryContainer entryContainer;
     private String name;
+    private boolean tracked;
     private final Map<Class<?>, Converter<Struct, Object>> converters = new HashMap<>();
 
     @Override
     public boolean init(Literal<?>[] args, int matchedPattern, SkriptParser.ParseResult parseResult, @Nullable EntryContainer entryContainer) {
         MatchResult regex = parseResult.regexes.get(0);
         name = regex.group(1).trim().toLowerCase(Locale.ENGLISH);
+        tracked = !parseResult.hasTag("untracked");
         this.entryContainer = entryContainer;
 
         if (entryContainer == null) {
@@ -142,7 +155,7 @@ public class StructStructTemplate extends Structure {
             return false;
         }
 
-        template = new StructTemplate(name, fields, customClass);
+        template = new StructTemplate(name, fields, customClass, tracked);
         return templateManager.addTemplate(template);
     }
 
@@ -227,7 +240,14 @@ public class StructStructTemplate extends Structure {
                 converters.put(targetType.getC(), new Converter<>() {
                     @Override
                     public @Nullable Object convert(Struct from) {
-                        return converter.getSingle(new DynamicFieldEvalEvent(from));
+                        from.getTemplate().getMetrics().recordConversion();
+                        DynamicFieldEvalEvent event = DynamicFieldEvalEvent.reusable();
+                        Struct previous = event.setStruct(from);
+                        try {
+                            return converter.getSingle(event);
+                        } finally {
+                            event.setStruct(previous);
+                        }
                     }
                 });
             }
@@ -242,8 +262,7 @@ public class StructStructTemplate extends Structure {
         var classManager = Oopsk.getClassManager();
 
         // Create a dynamic subclass
-        //noinspection unchecked
-        customClass = (Class<? extends Struct>) classManager.createTemporarySubclass("Struct_"+ name.replaceAll("[^a-zA-Z0-9_]", "_"));
+        customClass = classManager.getStructClass(name);
         assert customClass != null;
 
         // hack open the Classes class to allow re-registration
@@ -279,7 +298,7 @@ public class StructStructTemplate extends Structure {
         return true;
     }
 
-    private static final Pattern fieldPattern = Pattern.compile("(?<const>const(?:ant)? )?(?<dynamic>dynamic)?(?<name>[\\w ]+): (?<type>[\\w ]+?)(?: ?= ?(?<value>.+))?");
+    private static final Pattern fieldPattern = Pattern.compile("(?<const>const(?:ant)? )?(?<cached>cached )?(?<dynamic>dynamic)?(?<name>[\\w ]+): (?<type>[\\w ]+?)(?: ?= ?(?<value>.+))?");
 
     private List<Field<?>> getFields(@NotNull SectionNode node) {
         List<Field<?>> fields = new ArrayList<>();
@@ -306,6 +325,14 @@ public class StructStructTemplate extends Structure {
                     modifiers.add(Modifier.CONSTANT);
                 }
 
+                if (matcher.group("cached") != null) {
+                    if (!modifiers.contains(Modifier.DYNAMIC)) {
+                        Skript.error("Only dynamic fields can be cached.");
+                        return null;
+                    }
+                    modifiers.add(Modifier.CACHED);
+                }
+
                 // parse the field name
                 String fieldName = matcher.group("name").trim().toLowerCase(Locale.ENGLISH);
                 if (fieldName.isEmpty()) {
@@ -348,6 +375,6 @@ public class StructStructTemplate extends Structure {
 
     @Override
     public String toString(@Nullable Event event, boolean debug) {
-        return "struct " + name;
+        return (tracked ? "" : "untracked ") + "struct " + name;
     }
 }
@@ -0,0 +1,134 @@
+package com.sovdee.oopsk.elements.test;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.config.Node;
+import ch.njol.skript.doc.NoDoc;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.ExpressionType;
+import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.skript.lang.util.SimpleExpression;
+import ch.njol.skript.test.runner.TestMode;
+import ch.njol.util.Kleenean;
+import com.google.gson.stream.JsonReader;
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructJson;
+import com.sovdee.oopsk.core.StructStore;
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.log.runtime.SyntaxRuntimeErrorProducer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes structs, or the contents of a struct store, to an in-memory channel with {@link StructJson#writeAll} and reads
+ * them back. Structs read back from a store are ordered by key.
+ * Only registered when Skript is running tests.
+ */
+@NoDoc
+public class ExprJsonStreamRoundTrip extends SimpleExpression<Struct> implements SyntaxRuntimeErrorProducer {
+
+    static {
+        if (TestMode.ENABLED)
+            Skript.registerExpression(ExprJsonStreamRoundTrip.class, Struct.class, ExpressionType.COMBINED,
+                    "%structs% after [a] json stream round trip",
+                    "[the] structs in struct store %string% after [a] json stream round trip");
+    }
+
+    private Expression<?> source;
+    private boolean fromStore;
+    private Node node;
+
+    @Override
+    public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
+        source = expressions[0];
+        fromStore = matchedPattern == 1;
+        node = getParser().getNode();
+        return true;
+    }
+
+    @Override
+    protected Struct @Nullable [] get(Event event) {
+        try {
+            return fromStore ? roundTripStore(event) : roundTripStructs(event);
+        } catch (IOException e) {
+            error("The structs could not be round tripped through json: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Struct @Nullable [] roundTripStructs(Event event) throws IOException {
+        List<Struct> structs = new ArrayList<>();
+        for (Object value : source.getArray(event)) {
+            if (value instanceof Struct struct)
+                structs.add(struct);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int written = StructJson.writeAll(structs.iterator(), Channels.newChannel(bytes));
+        List<Struct> read = new ArrayList<>();
+        int count = StructJson.readAll(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())), read::add);
+        if (written != structs.size() || count != written) {
+            error("Wrote " + written + " of " + structs.size() + " structs, and read back " + count + ".");
+            return null;
+        }
+        return read.toArray(new Struct[0]);
+    }
+
+    private Struct @Nullable [] roundTripStore(Event event) throws IOException {
+        String name = (String) source.getSingle(event);
+        StructStore store = name == null ? null : Oopsk.getStoreManager().getStore(name);
+        if (store == null) {
+            error("There is no open struct store named " + name + ".");
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int written = StructJson.writeAll(store, Channels.newChannel(bytes));
+        Map<String, Struct> read = new TreeMap<>();
+        try (JsonReader in = new JsonReader(new StringReader(bytes.toString(StandardCharsets.UTF_8)))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                String key = in.nextName();
+                Struct struct = StructJson.read(in);
+                if (struct != null)
+                    read.put(key, struct);
+            }
+            in.endObject();
+        }
+        if (written != store.size() || read.size() != written) {
+            error("Wrote " + written + " of " + store.size() + " stored structs, and read back " + read.size() + ".");
+            return null;
+        }
+        return read.values().toArray(new Struct[0]);
+    }
+
+    @Override
+    public boolean isSingle() {
+        return false;
+    }
+
+    @Override
+    public Class<? extends Struct> getReturnType() {
+        return Struct.class;
+    }
+
+    @Override
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public String toString(@Nullable Event event, boolean debug) {
+        return (fromStore ? "the structs in struct store " : "") + source.toString(event, debug)
+                + " after a json stream round trip";
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.sovdee.oopsk.elements.test;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.config.Node;
+import ch.njol.skript.doc.NoDoc;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.ExpressionType;
+import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.skript.lang.util.SimpleExpression;
+import ch.njol.skript.test.runner.TestMode;
+import ch.njol.util.Kleenean;
+import com.sovdee.oopsk.Oopsk;
+import com.sovdee.oopsk.core.Struct;
+import com.sovdee.oopsk.core.StructManager;
+import com.sovdee.oopsk.core.StructTemplate;
+import com.sovdee.oopsk.core.TemplateManager;
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.log.runtime.SyntaxRuntimeErrorProducer;
+
+import java.lang.ref.Reference;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates structs of a throwaway template on several threads at once, while either removing the template or deleting
+ * half of the structs, and returns how many are registered as active and as orphaned afterwards.
+ * Only registered when Skript is running tests.
+ */
+@NoDoc
+public class ExprRegistryStress extends SimpleExpression<Long> implements SyntaxRuntimeErrorProducer {
+
+    static {
+        if (TestMode.ENABLED)
+            Skript.registerExpression(ExprRegistryStress.class, Long.class, ExpressionType.COMBINED,
+                    "registered struct counts after creating %integer% structs on %integer% threads " +
+                            "(removing:while removing their template|deleting:while deleting half of them)");
+    }
+
+    private static final AtomicInteger RUNS = new AtomicInteger();
+
+    private Expression<Integer> count;
+    private Expression<Integer> threads;
+    private boolean removing;
+    private Node node;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
+        count = (Expression<Integer>) expressions[0];
+        threads = (Expression<Integer>) expressions[1];
+        removing = parseResult.hasTag("removing");
+        node = getParser().getNode();
+        return true;
+    }
+
+    @Override
+    protected Long @Nullable [] get(Event event) {
+        Integer count = this.count.getSingle(event);
+        Integer threads = this.threads.getSingle(event);
+        if (count == null || threads == null || count < 0 || threads < 1) {
+            error("The struct and thread counts must be positive.");
+            return null;
+        }
+
+        TemplateManager templateManager = Oopsk.getTemplateManager();
+        StructManager structManager = Oopsk.getStructManager();
+        // a fresh template without a custom class, so no script template or type is affected
+        StructTemplate template = new StructTemplate("registry_stress_" + RUNS.incrementAndGet(), List.of(), null);
+        String name = template.getName();
+        templateManager.addTemplate(template);
+
+        Queue<Struct> created = new ConcurrentLinkedQueue<>();
+        AtomicInteger creations = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads + (removing ? 1 : 0));
+        try {
+            int total = count;
+            int share = total / threads;
+            for (int thread = 0; thread < threads; thread++) {
+                int structs = thread == 0 ? share + total % threads : share;
+                executor.execute(() -> {
+                    awaitQuietly(start);
+                    for (int i = 0; i < structs; i++) {
+                        Struct struct = structManager.createStruct(template, null);
+                        creations.incrementAndGet();
+                        if (!removing && i % 2 == 1) {
+                            structManager.deleteStruct(struct);
+                        } else {
+                            created.add(struct);
+                        }
+                    }
+                });
+            }
+            if (removing) {
+                // remove the template while the other threads are still registering structs
+                executor.execute(() -> {
+                    awaitQuietly(start);
+                    while (creations.get() < total / 2)
+                        Thread.onSpinWait();
+                    templateManager.removeTemplate(template);
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                error("The struct creation threads did not finish in time.");
+                return null;
+            }
+
+            long active = structManager.getActiveCounts().getOrDefault(name, 0);
+            long orphaned = structManager.getOrphanedCounts().getOrDefault(name, 0);
+            // the structs must stay reachable until they're counted, or they may be collected and expunged
+            Reference.reachabilityFence(created);
+            return new Long[]{active, orphaned};
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            executor.shutdownNow();
+            templateManager.removeTemplate(template);
+            structManager.clearOrphans(name);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isSingle() {
+        return false;
+    }
+
+    @Override
+    public Class<? extends Long> getReturnType() {
+        return Long.class;
+    }
+
+    @Override
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public String toString(@Nullable Event event, boolean debug) {
+        return "registered struct counts after creating " + count.toString(event, debug) + " structs on "
+                + threads.toString(event, debug) + " threads while "
+                + (removing ? "removing their template" : "deleting half of them");
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.sovdee.oopsk.elements.test;
+
+import ch.njol.skript.Skript;
+import ch.njol.skript.config.Node;
+import ch.njol.skript.doc.NoDoc;
+import ch.njol.skript.lang.Expression;
+import ch.njol.skript.lang.ExpressionType;
+import ch.njol.skript.lang.SkriptParser.ParseResult;
+import ch.njol.skript.lang.util.SimpleExpression;
+import ch.njol.skript.registrations.Classes;
+import ch.njol.skript.test.runner.TestMode;
+import ch.njol.skript.variables.SerializedVariable;
+import ch.njol.util.Kleenean;
+import com.sovdee.oopsk.core.Struct;
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.Nullable;
+import org.skriptlang.skript.log.runtime.SyntaxRuntimeErrorProducer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves values the way Skript saves variables and loads them back, for testing serialization from scripts.
+ * Optionally renames the template of saved structs, to load them as if they were saved with an older version of another template.
+ * Only registered when Skript is running tests.
+ */
+@NoDoc
+public class ExprSerializationRoundTrip extends SimpleExpression<Object> implements SyntaxRuntimeErrorProducer {
+
+    static {
+        if (TestMode.ENABLED)
+            Skript.registerExpression(ExprSerializationRoundTrip.class, Object.class, ExpressionType.COMBINED,
+                    "%objects% after [a] serialization round trip [rename:as %-string% structs]");
+    }
+
+    private Expression<?> values;
+    private @Nullable Expression<String> renameTo;
+    private Node node;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean init(Expression<?>[] expressions, int matchedPattern, Kleenean isDelayed, ParseResult parseResult) {
+        values = expressions[0];
+        renameTo = (Expression<String>) expressions[1];
+        node = getParser().getNode();
+        return true;
+    }
+
+    @Override
+    protected Object @Nullable [] get(Event event) {
+        String newName = renameTo == null ? null : renameTo.getSingle(event);
+        List<Object> results = new ArrayList<>();
+        for (Object value : values.getArray(event)) {
+            SerializedVariable.Value serialized = Classes.serialize(value);
+            if (serialized == null) {
+                error(Classes.toString(value) + " could not be serialized.");
+                continue;
+            }
+            byte[] data = serialized.data;
+            if (newName != null && value instanceof Struct struct) {
+                data = renameTemplate(data, struct.getTemplate().getName(), newName);
+                if (data == null)
+                    continue;
+            }
+            Object deserialized = Classes.deserialize(serialized.type, data);
+            if (deserialized == null) {
+                error(Classes.toString(value) + " could not be deserialized.");
+                continue;
+            }
+            results.add(deserialized);
+        }
+        return results.toArray();
+    }
+
+    /**
+     * Replaces the template name at the start of a saved struct, which is written with {@link java.io.DataOutput#writeUTF}.
+     * The saved bytes are nested in Skript's own format, so the new name must be as long as the old one.
+     */
+    private byte @Nullable [] renameTemplate(byte[] data, String oldName, String newName) {
+        byte[] oldBytes = utf(oldName);
+        byte[] newBytes = utf(newName);
+        if (oldBytes.length != newBytes.length) {
+            error("Structs can only be renamed to templates with names of the same length.");
+            return null;
+        }
+        byte[] renamed = data.clone();
+        for (int i = 0; i <= renamed.length - oldBytes.length; i++) {
+            if (matches(renamed, i, oldBytes)) {
+                System.arraycopy(newBytes, 0, renamed, i, newBytes.length);
+                return renamed;
+            }
+        }
+        error("The template name of " + oldName + " structs was not found in the saved data.");
+        return null;
+    }
+
+    private static byte[] utf(String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        byte[] utf = new byte[bytes.length + 2];
+        utf[0] = (byte) (bytes.length >>> 8);
+        utf[1] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, utf, 2, bytes.length);
+        return utf;
+    }
+
+    private static boolean matches(byte[] data, int offset, byte[] sequence) {
+        for (int i = 0; i < sequence.length; i++) {
+            if (data[offset + i] != sequence[i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isSingle() {
+        return values.isSingle();
+    }
+
+    @Override
+    public Class<?> getReturnType() {
+        return Object.class;
+    }
+
+    @Override
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public String toString(@Nullable Event event, boolean debug) {
+        return values.toString(event, debug) + " after a serialization round trip"
+                + (renameTo == null ? "" : " as " + renameTo.toString(event, debug) + " structs");
+    }
+
+}
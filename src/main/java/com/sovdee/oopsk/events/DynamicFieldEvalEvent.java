@@ -6,16 +6,38 @@ import org.bukkit.event.HandlerList;
 import org.jetbrains.annotations.NotNull;
 
 /**
- * Used for context when evaluating a dynamic field
+ * Used for context when evaluating a dynamic field or a struct converter.
+ * Each thread has a reusable instance, see {@link #reusable()}, so evaluations don't need to allocate a new event.
  */
 public class DynamicFieldEvalEvent extends Event {
 
-    private final Struct struct;
+    private static final ThreadLocal<DynamicFieldEvalEvent> REUSABLE = ThreadLocal.withInitial(() -> new DynamicFieldEvalEvent(null));
+
+    private Struct struct;
 
     public DynamicFieldEvalEvent(Struct struct) {
         this.struct = struct;
     }
 
+    /**
+     * Gets this thread's reusable eval event. Set its struct before evaluating and restore the previous struct
+     * afterward, so evaluations that trigger other evaluations on the same thread don't interfere with each other:
+     * <pre>{@code
+     * DynamicFieldEvalEvent event = DynamicFieldEvalEvent.reusable();
+     * Struct previous = event.setStruct(struct);
+     * try {
+     *     return expression.getArray(event);
+     * } finally {
+     *     event.setStruct(previous);
+     * }
+     * }</pre>
+     *
+     * @return The eval event of the current thread.
+     */
+    public static DynamicFieldEvalEvent reusable() {
+        return REUSABLE.get();
+    }
+
     /**
      * @return The struct that initiated this eval event.
      */
@@ -23,6 +45,17 @@ public class DynamicFieldEvalEvent extends Event {
         return struct;
     }
 
+    /**
+     * Sets the struct this event evaluates for.
+     * @param struct The struct that is evaluating.
+     * @return The struct that was previously set.
+     */
+    public Struct setStruct(Struct struct) {
+        Struct previous = this.struct;
+        this.struct = struct;
+        return previous;
+    }
+
     // bukkit stuff
 
     private static final HandlerList HANDLER_LIST = new HandlerList();